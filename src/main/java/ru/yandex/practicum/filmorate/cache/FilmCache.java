@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+// Кэш полностью собранных фильмов по id.
+// Загрузка выполняется вне блокировок кэша, поэтому инвалидация, пришедшая во время загрузки,
+// не должна быть перезаписана устаревшим результатом: каждая запись помнит версию ключа,
+// при которой началась загрузка, а invalidate сначала увеличивает версию и только потом удаляет запись.
+@Slf4j
+@Component
+public class FilmCache {
+    private static final int VERSION_STRIPES = 4096;
+
+    private final Cache<Long, Entry> cache;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final boolean enabled;
+
+    public FilmCache(@Value("${filmorate.cache.films.enabled:true}") boolean enabled,
+                     @Value("${filmorate.cache.films.maximum-weight:200000}") long maximumWeight,
+                     @Value("${filmorate.cache.films.expire-after-write:10m}") Duration expireAfterWrite,
+                     ObjectProvider<MeterRegistry> registryProvider) {
+        this.enabled = enabled;
+        // W-TinyLFU - политика вытеснения Caffeine по умолчанию
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Long id, Entry entry) -> weigh(entry.film()))
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        registryProvider.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "films"));
+        log.info("Кэш фильмов {}: максимальный вес = {}", enabled ? "включен" : "выключен", maximumWeight);
+    }
+
+    public Film get(Long id, Function<Long, Film> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        int stripe = stripe(id);
+        Entry entry = cache.getIfPresent(id);
+        if (entry != null && entry.version() == versions.get(stripe)) {
+            return entry.film();
+        }
+        long version = versions.get(stripe);
+        Film film = loader.apply(id);
+        // compute выполняется под блокировкой ключа, так что invalidate не может вклиниться между проверкой и записью
+        cache.asMap().compute(id, (key, current) -> versions.get(stripe) == version
+                ? new Entry(version, film)
+                : current);
+        return film;
+    }
+
+    // фильм из кэша без загрузки, null если его там нет или запись устарела
+    public Film peek(Long id) {
+        Entry entry = enabled ? cache.getIfPresent(id) : null;
+        return entry != null && entry.version() == versions.get(stripe(id)) ? entry.film() : null;
+    }
+
+    public void invalidate(Long id) {
+        versions.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll(Collection<Long> ids) {
+        ids.forEach(this::invalidate);
+    }
+
+    public void invalidateAll() {
+        for (int stripe = 0; stripe < VERSION_STRIPES; stripe++) {
+            versions.incrementAndGet(stripe);
+        }
+        cache.invalidateAll();
+    }
+
+    private static int stripe(Long id) {
+        return (Long.hashCode(id) & Integer.MAX_VALUE) % VERSION_STRIPES;
+    }
+
+    // приблизительный размер фильма в памяти: строки и вложенные коллекции
+    private static int weigh(Film film) {
+        int weight = 1;
+        weight += film.getName() == null ? 0 : film.getName().length() / 16;
+        weight += film.getDescription() == null ? 0 : film.getDescription().length() / 16;
+        weight += film.getGenres() == null ? 0 : film.getGenres().size();
+        weight += film.getDirectors() == null ? 0 : film.getDirectors().size();
+        return weight;
+    }
+
+    private record Entry(long version, Film film) {
+    }
+}
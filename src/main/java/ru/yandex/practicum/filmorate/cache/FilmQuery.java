@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RankType;
+import ru.yandex.practicum.filmorate.model.SearchType;
+
+import java.util.Locale;
+
+// Нормализованные параметры запросов списков фильмов - ключи кэша результатов
+public sealed interface FilmQuery {
+
+    // может ли фильм попасть в результат запроса
+    boolean matches(Film film);
+
+    static Popular popular(Long count, Long genreId, int year, RankType rank) {
+        return new Popular(count, genreId, year, rank);
+    }
+
+    static Search search(String query, SearchType searchType) {
+        return new Search(query.toLowerCase(Locale.ROOT), searchType);
+    }
+
+    record Popular(long count, long genreId, int year, RankType rank) implements FilmQuery {
+        @Override
+        public boolean matches(Film film) {
+            boolean genreMatches = genreId == 0 || film.getGenres().stream()
+                    .mapToLong(Genre::getId)
+                    .anyMatch(id -> id == genreId);
+            boolean yearMatches = year == 0 || film.getReleaseDate().getYear() == year;
+            return genreMatches && yearMatches;
+        }
+    }
+
+    record Search(String query, SearchType searchType) implements FilmQuery {
+        @Override
+        public boolean matches(Film film) {
+            return switch (searchType) {
+                case TITLE -> titleMatches(film);
+                case DIRECTOR -> directorMatches(film.getDirectors().stream()
+                        .map(Director::getName)
+                        .toList());
+                case TITLE_AND_DIRECTOR -> titleMatches(film) || directorMatches(film.getDirectors().stream()
+                        .map(Director::getName)
+                        .toList());
+            };
+        }
+
+        public boolean directorMatches(Iterable<String> names) {
+            if (searchType == SearchType.TITLE) {
+                return false;
+            }
+            for (String name : names) {
+                // у только что созданного фильма имена режиссеров могут быть не заполнены
+                if (name == null || name.toLowerCase(Locale.ROOT).contains(query)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean titleMatches(Film film) {
+            return film.getName() != null && film.getName().toLowerCase(Locale.ROOT).contains(query);
+        }
+    }
+}
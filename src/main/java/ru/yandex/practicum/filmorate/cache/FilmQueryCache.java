@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Кэш результатов /films/popular и /films/search.
+// Устаревшая запись отдается сразу, а пересчитывается в фоне; одновременно для ключа выполняется
+// не больше одной загрузки, остальные вызовы ждут ее результат (после истечения записи БД получает один запрос, а не N).
+// Загрузка, во время которой пришла инвалидация, возвращается вызывающему, но в кэше не остается.
+@Component
+public class FilmQueryCache {
+    private final Cache<FilmQuery, Entry> cache;
+    private final ConcurrentHashMap<FilmQuery, Load> loads = new ConcurrentHashMap<>();
+    private final ExecutorService refreshExecutor;
+    private final boolean enabled;
+    private final long refreshAfterNanos;
+    private final Counter staleHits;
+    private final Counter joinedLoads;
+
+    public FilmQueryCache(@Value("${filmorate.cache.film-queries.enabled:true}") boolean enabled,
+                          @Value("${filmorate.cache.film-queries.maximum-size:1000}") long maximumSize,
+                          @Value("${filmorate.cache.film-queries.refresh-after:30s}") Duration refreshAfter,
+                          @Value("${filmorate.cache.film-queries.expire-after:5m}") Duration expireAfter,
+                          ExecutorService hydrationExecutor,
+                          ObjectProvider<MeterRegistry> registryProvider) {
+        this.enabled = enabled;
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.refreshExecutor = hydrationExecutor;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfter)
+                .recordStats()
+                .build();
+        MeterRegistry registry = registryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        CaffeineCacheMetrics.monitor(registry, cache, "film-queries");
+        staleHits = Counter.builder("filmorate.cache.film-queries.stale")
+                .description("Число ответов устаревшими данными на время фонового пересчета")
+                .register(registry);
+        joinedLoads = Counter.builder("filmorate.cache.film-queries.joined")
+                .description("Число вызовов, дождавшихся уже выполняемой загрузки")
+                .register(registry);
+    }
+
+    public Collection<Film> get(FilmQuery query, Function<FilmQuery, Collection<Film>> loader) {
+        if (!enabled) {
+            return loader.apply(query);
+        }
+        Entry entry = cache.getIfPresent(query);
+        if (entry == null) {
+            return await(load(query, loader));
+        }
+        if (System.nanoTime() - entry.loadedAt() > refreshAfterNanos && !loads.containsKey(query)) {
+            staleHits.increment();
+            refreshExecutor.execute(() -> load(query, loader));
+        }
+        return entry.films();
+    }
+
+    // удаляет записи, чей запрос может включать измененные фильмы или уже содержит их в результате
+    public void invalidate(Predicate<FilmQuery> queryMatches, Collection<Long> filmsId) {
+        if (!enabled) {
+            return;
+        }
+        Set<Long> ids = Set.copyOf(filmsId);
+        // выполняемые загрузки могли прочитать данные до изменения - их результат не кэшируем
+        loads.values().forEach(load -> load.dirty = true);
+        cache.asMap().entrySet().removeIf(entry -> queryMatches.test(entry.getKey())
+                || entry.getValue().films().stream().anyMatch(film -> ids.contains(film.getId())));
+    }
+
+    private CompletableFuture<Collection<Film>> load(FilmQuery query, Function<FilmQuery, Collection<Film>> loader) {
+        Load load = new Load();
+        Load running = loads.putIfAbsent(query, load);
+        if (running != null) {
+            joinedLoads.increment();
+            return running.future;
+        }
+        try {
+            List<Film> films = List.copyOf(loader.apply(query));
+            Entry entry = new Entry(films, System.nanoTime());
+            cache.put(query, entry);
+            // проверка после записи: инвалидация до нее пометит загрузку, после нее - удалит запись сама
+            if (load.dirty) {
+                cache.asMap().remove(query, entry);
+            }
+            load.future.complete(films);
+        } catch (RuntimeException e) {
+            load.future.completeExceptionally(e);
+        } finally {
+            loads.remove(query, load);
+        }
+        return load.future;
+    }
+
+    private Collection<Film> await(CompletableFuture<Collection<Film>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Entry(List<Film> films, long loadedAt) {
+    }
+
+    private static class Load {
+        private final CompletableFuture<Collection<Film>> future = new CompletableFuture<>();
+        private volatile boolean dirty;
+    }
+}
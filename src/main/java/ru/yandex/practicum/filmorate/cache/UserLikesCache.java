@@ -0,0 +1,137 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+// Множества id фильмов, оцененных пользователем, - отсортированные массивы long.
+// Общие фильмы двух пользователей - пересечение слиянием двух массивов, без обращения к "likes".
+// Массив загружается из БД при первом обращении и дальше поддерживается при оценке и ее удалении:
+// загрузка выполняется под блокировкой ключа, а изменение ждет ее окончания, поэтому оценка,
+// сохраненная во время загрузки, не теряется. Массив не меняется на месте - изменение заменяет его копией.
+// Фильмы, удаленные после загрузки, остаются в массиве и отсеиваются при чтении фильмов по id.
+@Slf4j
+@Component
+public class UserLikesCache {
+    private static final long[] EMPTY = new long[0];
+
+    private final FilmLikeStorage filmLikeStorage;
+    private final Cache<Long, long[]> cache;
+
+    public UserLikesCache(FilmLikeStorage filmLikeStorage,
+                          @Value("${filmorate.cache.user-likes.maximum-weight:1000000}") long maximumWeight,
+                          ObjectProvider<MeterRegistry> registryProvider) {
+        this.filmLikeStorage = filmLikeStorage;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Long userId, long[] films) -> films.length + 1)
+                .recordStats()
+                .build();
+        registryProvider.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "user-likes"));
+        log.info("Кэш оцененных пользователями фильмов: максимальный вес = {}", maximumWeight);
+    }
+
+    public long[] get(Long userId) {
+        return cache.get(userId, this::load);
+    }
+
+    public void add(Long userId, Long filmId) {
+        cache.asMap().computeIfPresent(userId, (id, films) -> {
+            int index = Arrays.binarySearch(films, filmId);
+            if (index >= 0) {
+                return films;
+            }
+            int position = -index - 1;
+            long[] result = new long[films.length + 1];
+            System.arraycopy(films, 0, result, 0, position);
+            result[position] = filmId;
+            System.arraycopy(films, position, result, position + 1, films.length - position);
+            return result;
+        });
+    }
+
+    public void remove(Long userId, Long filmId) {
+        cache.asMap().computeIfPresent(userId, (id, films) -> {
+            int position = Arrays.binarySearch(films, filmId);
+            if (position < 0) {
+                return films;
+            }
+            long[] result = new long[films.length - 1];
+            System.arraycopy(films, 0, result, 0, position);
+            System.arraycopy(films, position + 1, result, position, films.length - position - 1);
+            return result;
+        });
+    }
+
+    public void invalidate(Long userId) {
+        cache.invalidate(userId);
+    }
+
+    public void invalidateAll(Collection<Long> usersId) {
+        cache.invalidateAll(usersId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    // id фильмов, оцененных обоими пользователями, по возрастанию
+    public long[] common(Long userId, Long otherId) {
+        long[] first = get(userId);
+        long[] second = get(otherId);
+        if (first.length > second.length) {
+            long[] swap = first;
+            first = second;
+            second = swap;
+        }
+        if (first.length == 0) {
+            return EMPTY;
+        }
+        long[] result = new long[first.length];
+        int count = 0;
+        // если один массив намного короче, его элементы дешевле искать двоичным поиском в длинном
+        if ((long) first.length * (64 - Long.numberOfLeadingZeros(second.length)) < first.length + second.length) {
+            int from = 0;
+            for (long filmId : first) {
+                int index = Arrays.binarySearch(second, from, second.length, filmId);
+                if (index >= 0) {
+                    result[count++] = filmId;
+                    from = index + 1;
+                } else {
+                    from = -index - 1;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < first.length && j < second.length) {
+                if (first[i] < second[j]) {
+                    i++;
+                } else if (first[i] > second[j]) {
+                    j++;
+                } else {
+                    result[count++] = first[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private long[] load(Long userId) {
+        return filmLikeStorage.findFilmsIdOfUser(userId).stream()
+                .mapToLong(Long::longValue)
+                .sorted()
+                .toArray();
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ExecutorConfig {
+
+    @Bean(destroyMethod = "close")
+    public ExecutorService hydrationExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
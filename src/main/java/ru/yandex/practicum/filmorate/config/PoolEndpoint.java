@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.JdbcConcurrencyGate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// GET /actuator/pool - текущее состояние пула соединений и шлюза доступа к БД
+@Component
+@Endpoint(id = "pool")
+@RequiredArgsConstructor
+public class PoolEndpoint {
+    private final DataSource dataSource;
+    private final JdbcConcurrencyGate gate;
+
+    @ReadOperation
+    public Map<String, Object> pool() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        HikariDataSource hikari = unwrap();
+        if (hikari == null) {
+            status.put("type", dataSource.getClass().getSimpleName());
+        } else {
+            status.put("name", hikari.getPoolName());
+            status.put("maximumPoolSize", hikari.getMaximumPoolSize());
+            status.put("minimumIdle", hikari.getMinimumIdle());
+            status.put("connectionTimeoutMs", hikari.getConnectionTimeout());
+            status.put("leakDetectionThresholdMs", hikari.getLeakDetectionThreshold());
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            // пул создается при первом запросе соединения
+            if (pool != null) {
+                status.put("active", pool.getActiveConnections());
+                status.put("idle", pool.getIdleConnections());
+                status.put("total", pool.getTotalConnections());
+                status.put("pending", pool.getThreadsAwaitingConnection());
+            }
+        }
+        status.put("gateAvailable", gate.getAvailablePermits());
+        status.put("gateWaiting", gate.getWaiting());
+        return status;
+    }
+
+    private HikariDataSource unwrap() {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
 import java.util.Collection;
 
@@ -13,6 +17,7 @@ import java.util.Collection;
 @RequestMapping("/directors")
 public class DirectorController {
     private final DirectorService directorService;
+    private final EntityVersions versions;
 
     @GetMapping
     public Collection<Director> getAllDirectors() {
@@ -20,8 +25,17 @@ public class DirectorController {
     }
 
     @GetMapping("/{id}")
-    public Director getDirectorById(@PathVariable Long id) {
-        return directorService.getDirectorById(id);
+    public Director getDirectorById(@PathVariable Long id, WebRequest request) {
+        String etag = versions.etag(EntityVersions.Type.DIRECTOR, id);
+        String cached = EntityVersions.notModifiedTag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag);
+        if (cached != null && request.checkNotModified(cached)) {
+            return null;
+        }
+        Director director = directorService.getDirectorById(id);
+        if (request.checkNotModified(EntityVersions.withVersion(etag, director.getVersion()))) {
+            return null;
+        }
+        return director;
     }
 
     @PostMapping(path = {"/", ""})
@@ -29,9 +43,18 @@ public class DirectorController {
         return directorService.addDirector(director);
     }
 
+    // ожидаемая версия берется из If-Match или из тела; без нее режиссер обновляется без проверки
     @PutMapping
-    public Director updateDirector(@Valid @RequestBody Director director) {
-        return directorService.updateDirector(director);
+    public Director updateDirector(@Valid @RequestBody Director director,
+                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                   HttpServletResponse response) {
+        if (ifMatch != null) {
+            director.setVersion(EntityVersions.versionOf(ifMatch));
+        }
+        Director updated = directorService.updateDirector(director);
+        String etag = versions.etag(EntityVersions.Type.DIRECTOR, updated.getId());
+        response.setHeader(HttpHeaders.ETAG, EntityVersions.withVersion(etag, updated.getVersion()));
+        return updated;
     }
 
     @DeleteMapping("/{id}")
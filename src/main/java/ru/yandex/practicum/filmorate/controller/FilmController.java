@@ -1,12 +1,30 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmLikeImport;
+import ru.yandex.practicum.filmorate.model.FilmLikeImportResult;
+import ru.yandex.practicum.filmorate.model.FilmPage;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.List;
 
@@ -15,16 +33,33 @@ import java.util.List;
 @RestController
 @RequestMapping("/films")
 public class FilmController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final FilmService service;
+    private final FilmImportService importService;
+    private final ObjectMapper objectMapper;
+    private final EntityVersions versions;
 
     @GetMapping
-    public Collection<Film> findAll() {
+    public Collection<Film> findAll(WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.FILM))) {
+            return null;
+        }
         return service.findAll();
     }
 
     @GetMapping("/{id}")
-    public Film findById(@PathVariable Long id) {
-        return service.findById(id);
+    public Film findById(@PathVariable Long id, WebRequest request) {
+        String etag = versions.etag(EntityVersions.Type.FILM, id);
+        String cached = EntityVersions.notModifiedTag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag);
+        if (cached != null && request.checkNotModified(cached)) {
+            return null;
+        }
+        Film film = service.findById(id);
+        if (request.checkNotModified(EntityVersions.withVersion(etag, film.getVersion()))) {
+            return null;
+        }
+        return film;
     }
 
     @PostMapping
@@ -32,9 +67,52 @@ public class FilmController {
         return service.create(film);
     }
 
+    // POST /films/bulk - JSON-массив или NDJSON с фильмами; в ответ NDJSON с результатом по каждому фильму
+    @PostMapping(value = "/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void importFilms(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        ServletOutputStream out = response.getOutputStream();
+        // MappingIterator читает как элементы массива, так и значения, идущие друг за другом
+        try (MappingIterator<Film> films = objectMapper.readerFor(Film.class).readValues(request.getInputStream())) {
+            importService.importFilms(films, result -> write(out, result));
+        }
+        out.flush();
+    }
+
+    // POST /films/likes/bulk - JSON-массив или NDJSON с оценками {filmId, userId, mark}; в ответ сводка импорта
+    @PostMapping(value = "/likes/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public FilmLikeImportResult importLikes(HttpServletRequest request) throws IOException {
+        try (MappingIterator<FilmLikeImport> likes = objectMapper.readerFor(FilmLikeImport.class)
+                .readValues(request.getInputStream())) {
+            return importService.importLikes(likes);
+        }
+    }
+
+    private void write(ServletOutputStream out, FilmImportResult result) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(result));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ожидаемая версия берется из If-Match или из тела; без нее фильм обновляется без проверки
     @PutMapping
-    public Film update(@Valid @RequestBody Film newFilm) {
-        return service.update(newFilm);
+    public Film update(@Valid @RequestBody Film newFilm,
+                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                       HttpServletResponse response) {
+        if (ifMatch != null) {
+            newFilm.setVersion(EntityVersions.versionOf(ifMatch));
+        }
+        Film film = service.update(newFilm);
+        String etag = versions.etag(EntityVersions.Type.FILM, film.getId());
+        response.setHeader(HttpHeaders.ETAG, EntityVersions.withVersion(etag, film.getVersion()));
+        return film;
     }
 
     @DeleteMapping("/{id}")
@@ -42,43 +120,96 @@ public class FilmController {
         service.delete(id);
     }
 
+    // GET /films/{id}/likes?from={from}&size={size} - полный список лайков фильма постранично
+    @GetMapping("/{id}/likes")
+    public Collection<FilmLike> findLikes(@PathVariable Long id,
+                                          @RequestParam(defaultValue = "0", required = false) int from,
+                                          @RequestParam(defaultValue = "100", required = false) int size,
+                                          WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.FILM, id))) {
+            return null;
+        }
+        return service.findLikes(id, from, size);
+    }
+
+    // по умолчанию возвращается только обновленная сводка оценок, фильм целиком - с параметром full=true
     @PutMapping("/{id}/like/{userId}")
-    public Film addLike(@PathVariable Long id,
-                        @PathVariable Long userId,
-                        @RequestParam Integer mark) {
-        return service.addLike(id, userId, mark);
+    public Object addLike(@PathVariable Long id,
+                          @PathVariable Long userId,
+                          @RequestParam Integer mark,
+                          @RequestParam(defaultValue = "false", required = false) boolean full) {
+        FilmRating rating = service.addLike(id, userId, mark);
+        return full ? service.findById(id) : rating;
     }
 
     @DeleteMapping("/{id}/like/{userId}")
-    public Film deleteLike(@PathVariable Long id,
-                           @PathVariable Long userId) {
-        return service.deleteLike(id, userId);
+    public Object deleteLike(@PathVariable Long id,
+                             @PathVariable Long userId,
+                             @RequestParam(defaultValue = "false", required = false) boolean full) {
+        FilmRating rating = service.deleteLike(id, userId);
+        return full ? service.findById(id) : rating;
+    }
+
+    // GET /films/trending?window=24h&count=10&decay=false - по числу оценок за скользящее окно
+    @GetMapping("/trending")
+    public Collection<Film> getTrending(
+            @RequestParam(defaultValue = "24h", required = false) String window,
+            @RequestParam(defaultValue = "10", required = false) int count,
+            @RequestParam(defaultValue = "false", required = false) boolean decay) {
+        return service.getTrending(window, count, decay);
     }
 
-    // пример запроса будет выглядить так GET /films/popular?count={limit}&genreId={genreId}&year={year}
+    // пример запроса будет выглядить так GET /films/popular?count={limit}&genreId={genreId}&year={year}&rank=avg
     @GetMapping("/popular")
     public Collection<Film> getPopular(
             @RequestParam(defaultValue = "10", required = false) Long count,
             @RequestParam(defaultValue = "0", required = false) Long genreId,
-            @RequestParam(defaultValue = "0", required = false) int year) {
-        return service.getPopular(count, genreId, year);
+            @RequestParam(defaultValue = "0", required = false) int year,
+            @RequestParam(defaultValue = "avg", required = false) String rank,
+            WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.FILM))) {
+            return null;
+        }
+        return service.getPopular(count, genreId, year, rank);
     }
 
     @GetMapping("/search")
     public Collection<Film> searchFilms(
             @RequestParam(defaultValue = "", required = false) String query,
-            @RequestParam(defaultValue = "title", required = false) List<String> by) {
+            @RequestParam(defaultValue = "title", required = false) List<String> by,
+            WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.FILM))) {
+            return null;
+        }
         return service.searchFilms(query, by);
     }
 
     @GetMapping("/director/{id}")
-    public Collection<Film> getFilmsByDirector(@PathVariable Long id, @RequestParam String sortBy) {
-        return service.getFilmsByDirector(id, sortBy);
+    public Collection<Film> getFilmsByDirector(@PathVariable Long id,
+                                               @RequestParam String sortBy,
+                                               @RequestParam(defaultValue = "avg", required = false) String rank,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(defaultValue = "100", required = false) int size,
+                                               WebRequest request,
+                                               HttpServletResponse response) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.FILM))) {
+            return null;
+        }
+        // курсор следующей страницы передается в заголовке, тело ответа остается списком фильмов
+        FilmPage page = service.getFilmsByDirector(id, sortBy, rank, cursor, size);
+        if (page.getNext() != null) {
+            response.setHeader(NEXT_CURSOR_HEADER, page.getNext());
+        }
+        return page.getFilms();
     }
 
     @GetMapping("/common")
     public Collection<Film> getCommonFilms(@RequestParam Long userId,
-                                           @RequestParam Long friendId) {
+                                           @RequestParam Long friendId,
+                                           WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.FILM))) {
+            return null;
+        }
         return service.getCommonFilms(userId, friendId);
     }
 }
@@ -1,11 +1,15 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.service.ReviewService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
 import java.util.List;
 
@@ -16,6 +20,7 @@ import java.util.List;
 public class ReviewController {
 
     private final ReviewService reviewService;
+    private final EntityVersions versions;
 
     // POST /reviews Добавление нового отзыва.
     @PostMapping
@@ -24,9 +29,18 @@ public class ReviewController {
     }
 
     // PUT /reviews Редактирование уже имеющегося отзыва.
+    // Ожидаемая версия берется из If-Match или из тела; без нее отзыв обновляется без проверки.
     @PutMapping
-    public Review updateReview(@RequestBody @Valid Review review) {
-        return reviewService.updateReview(review);
+    public Review updateReview(@RequestBody @Valid Review review,
+                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                               HttpServletResponse response) {
+        if (ifMatch != null) {
+            review.setVersion(EntityVersions.versionOf(ifMatch));
+        }
+        Review updated = reviewService.updateReview(review);
+        String etag = versions.etag(EntityVersions.Type.REVIEW, updated.getReviewId());
+        response.setHeader(HttpHeaders.ETAG, EntityVersions.withVersion(etag, updated.getVersion()));
+        return updated;
     }
 
     // DELETE /reviews/{id} Удаление уже имеющегося отзыва.
@@ -37,15 +51,28 @@ public class ReviewController {
 
     // GET /reviews/{id} Получение отзыва по идентификатору.
     @GetMapping("/{id}")
-    public Review getReview(@PathVariable Long id) {
-        return reviewService.getReview(id);
+    public Review getReview(@PathVariable Long id, WebRequest request) {
+        String etag = versions.etag(EntityVersions.Type.REVIEW, id);
+        String cached = EntityVersions.notModifiedTag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag);
+        if (cached != null && request.checkNotModified(cached)) {
+            return null;
+        }
+        Review review = reviewService.getReview(id);
+        if (request.checkNotModified(EntityVersions.withVersion(etag, review.getVersion()))) {
+            return null;
+        }
+        return review;
     }
 
     //GET /reviews?filmId={filmId}&count={count} Получение всех отзывов по идентификатору фильма,
     // если фильм не указан то все. Если кол-во не указано, то 10.
     @GetMapping()
     public List<Review> getReviews(@RequestParam(required = false) Long filmId,
-                                   @RequestParam(defaultValue = "10", required = false) Integer count) {
+                                   @RequestParam(defaultValue = "10", required = false) Integer count,
+                                   WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.REVIEW))) {
+            return null;
+        }
         return reviewService.getReviews(filmId, count);
     }
 
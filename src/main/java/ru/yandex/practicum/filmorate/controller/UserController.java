@@ -1,14 +1,20 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.UserFeed;
+import ru.yandex.practicum.filmorate.model.UserLike;
+import ru.yandex.practicum.filmorate.model.UserLikePage;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
 import java.util.Collection;
 
@@ -17,17 +23,32 @@ import java.util.Collection;
 @RestController
 @RequestMapping("/users")
 public class UserController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final UserService userService;
     private final FilmService filmService;
+    private final EntityVersions versions;
 
     @GetMapping
-    public Collection<User> findAll() {
+    public Collection<User> findAll(WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.USER))) {
+            return null;
+        }
         return userService.findAll();
     }
 
     @GetMapping("/{id}")
-    public User findById(@PathVariable Long id) {
-        return userService.findById(id);
+    public User findById(@PathVariable Long id, WebRequest request) {
+        String etag = versions.etag(EntityVersions.Type.USER, id);
+        String cached = EntityVersions.notModifiedTag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag);
+        if (cached != null && request.checkNotModified(cached)) {
+            return null;
+        }
+        User user = userService.findById(id);
+        if (request.checkNotModified(EntityVersions.withVersion(etag, user.getVersion()))) {
+            return null;
+        }
+        return user;
     }
 
     @PostMapping
@@ -35,9 +56,18 @@ public class UserController {
         return userService.create(user);
     }
 
+    // ожидаемая версия берется из If-Match или из тела; без нее пользователь обновляется без проверки
     @PutMapping
-    public User update(@Valid @RequestBody User newUser) {
-        return userService.update(newUser);
+    public User update(@Valid @RequestBody User newUser,
+                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                       HttpServletResponse response) {
+        if (ifMatch != null) {
+            newUser.setVersion(EntityVersions.versionOf(ifMatch));
+        }
+        User user = userService.update(newUser);
+        String etag = versions.etag(EntityVersions.Type.USER, user.getId());
+        response.setHeader(HttpHeaders.ETAG, EntityVersions.withVersion(etag, user.getVersion()));
+        return user;
     }
 
     @DeleteMapping("/{id}")
@@ -58,23 +88,56 @@ public class UserController {
     }
 
     @GetMapping("/{id}/friends")
-    public Collection<User> findAllFriends(@PathVariable Long id) {
+    public Collection<User> findAllFriends(@PathVariable Long id, WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.USER))) {
+            return null;
+        }
         return userService.findAllFriends(id);
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
     public Collection<User> findCommonFriends(@PathVariable Long id,
-                                              @PathVariable Long otherId) {
+                                              @PathVariable Long otherId,
+                                              WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.USER))) {
+            return null;
+        }
         return userService.findCommonFriends(id, otherId);
     }
 
     @GetMapping("/{id}/feed")
-    public Collection<UserFeed> findUserFeeds(@PathVariable Long id) {
+    public Collection<UserFeed> findUserFeeds(@PathVariable Long id, WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.FEED, id))) {
+            return null;
+        }
         return userService.findUserFeeds(id);
     }
 
+    // GET /users/{id}/likes?cursor={cursor}&size={size} - оценки пользователя по возрастанию id фильма,
+    // курсор следующей страницы передается в заголовке
+    @GetMapping("/{id}/likes")
+    public Collection<UserLike> findLikes(@PathVariable Long id,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(defaultValue = "100", required = false) int size,
+                                          WebRequest request,
+                                          HttpServletResponse response) {
+        // запись оценки в буфер меняет версию сразу, а страница накладывает буфер без сброса,
+        // поэтому ETag, взятый до чтения, соответствует ответу или устарел, но не подтверждает старый ответ
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.FILM))) {
+            return null;
+        }
+        UserLikePage page = filmService.findLikesOfUser(id, cursor, size);
+        if (page.getNext() != null) {
+            response.setHeader(NEXT_CURSOR_HEADER, page.getNext());
+        }
+        return page.getLikes();
+    }
+
     @GetMapping("/{id}/recommendations")
-    public Collection<Film> getUserRecommendations(@PathVariable Long id) {
+    public Collection<Film> getUserRecommendations(@PathVariable Long id, WebRequest request) {
+        if (request.checkNotModified(versions.etag(EntityVersions.Type.FILM))) {
+            return null;
+        }
         return filmService.getRecommendedFilmsForUser(id);
     }
 }
@@ -0,0 +1,300 @@
+package ru.yandex.practicum.filmorate.datagen;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.cache.FilmQueryCache;
+import ru.yandex.practicum.filmorate.cache.UserLikesCache;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.FilmRatingStorage;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DatasetGenerator {
+    private static final int GENRES_COUNT = 6;
+    private static final int MPA_COUNT = 5;
+    private static final int FRIENDSHIP_STATUS_UNCONFIRMED = 2;
+    private static final int USABILITY_USEFUL = 1;
+    private static final int USABILITY_USELESS = 2;
+    private static final LocalDate FIRST_RELEASE_DATE = LocalDate.of(1950, 1, 1);
+    private static final int RELEASE_DATE_RANGE_DAYS = 75 * 365;
+
+    private static final List<String> CLEAR_QUERIES = List.of(
+            "DELETE FROM \"usability_reviews\";",
+            "DELETE FROM \"reviews\";",
+            "DELETE FROM \"user_events\";",
+            "DELETE FROM \"film_ratings\";",
+            "DELETE FROM \"likes\";",
+            "DELETE FROM \"friends\";",
+            "DELETE FROM \"films_director\";",
+            "DELETE FROM \"films_genre\";",
+            "DELETE FROM \"films\";",
+            "DELETE FROM \"directors\";",
+            "DELETE FROM \"users\";"
+    );
+    private static final String USERS_INSERT_QUERY = """
+            INSERT INTO "users" ("user_id", "email", "login", "username", "birthday")
+            VALUES (?, ?, ?, ?, ?);
+            """;
+    private static final String DIRECTORS_INSERT_QUERY = """
+            INSERT INTO "directors" ("director_id", "name")
+            VALUES (?, ?);
+            """;
+    private static final String FILMS_INSERT_QUERY = """
+            INSERT INTO "films" ("film_id", "name", "description", "release_date", "duration", "mpa_id")
+            VALUES (?, ?, ?, ?, ?, ?);
+            """;
+    private static final String FILMS_GENRE_INSERT_QUERY = """
+            INSERT INTO "films_genre" ("film_id", "genre_id")
+            VALUES (?, ?);
+            """;
+    private static final String FILMS_DIRECTOR_INSERT_QUERY = """
+            INSERT INTO "films_director" ("film_id", "director_id")
+            VALUES (?, ?);
+            """;
+    private static final String LIKES_INSERT_QUERY = """
+            INSERT INTO "likes" ("film_id", "user_id", "mark")
+            VALUES (?, ?, ?);
+            """;
+    private static final String FRIENDS_INSERT_QUERY = """
+            INSERT INTO "friends" ("user_id", "friend_id", "friendship_status_id")
+            VALUES (?, ?, ?);
+            """;
+    private static final String REVIEWS_INSERT_QUERY = """
+            INSERT INTO "reviews" ("review_id", "film_id", "user_id", "content", "is_positive")
+            VALUES (?, ?, ?, ?, ?);
+            """;
+    private static final String USABILITY_REVIEWS_INSERT_QUERY = """
+            INSERT INTO "usability_reviews" ("user_id", "review_id", "usability_id")
+            VALUES (?, ?, ?);
+            """;
+    private static final String RESTART_IDENTITY_QUERY = """
+            ALTER TABLE "%s" ALTER COLUMN "%s" RESTART WITH %d;
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final FilmRatingStorage filmRatingStorage;
+    private final EntityVersions versions;
+    private final FilmCache filmCache;
+    private final FilmQueryCache filmQueryCache;
+    private final UserLikesCache userLikesCache;
+
+    public DatasetStats generate(DatasetProperties properties) {
+        long start = System.currentTimeMillis();
+        SplittableRandom random = new SplittableRandom(properties.getSeed());
+        int users = properties.scaled(properties.getUsers());
+        int films = properties.scaled(properties.getFilms());
+        int directors = properties.scaled(properties.getDirectors());
+        int reviews = properties.scaled(properties.getReviews());
+        log.info("Генерация набора данных: seed = {}, scale = {}, пользователей = {}, фильмов = {}",
+                properties.getSeed(), properties.getScale(), users, films);
+
+        CLEAR_QUERIES.forEach(jdbc::update);
+        DatasetStats stats = new DatasetStats();
+        stats.setUsers(users);
+        stats.setFilms(films);
+        stats.setDirectors(directors);
+        stats.setReviews(reviews);
+
+        generateUsers(properties, users);
+        generateDirectors(properties, directors);
+        double[] quality = generateFilms(properties, random.split(), films, directors);
+        ZipfSampler filmPopularity = new ZipfSampler(films, properties.getZipfExponent(), random.split());
+        stats.setLikes(generateLikes(properties, random.split(), filmPopularity, quality, users));
+        filmRatingStorage.recalculateAll();
+        stats.setFriends(generateFriends(properties, random.split(), users));
+        stats.setReviewVotes(generateReviews(properties, random.split(), filmPopularity, users, reviews));
+
+        jdbc.update(String.format(RESTART_IDENTITY_QUERY, "users", "user_id", users + 1));
+        jdbc.update(String.format(RESTART_IDENTITY_QUERY, "directors", "director_id", directors + 1));
+        jdbc.update(String.format(RESTART_IDENTITY_QUERY, "films", "film_id", films + 1));
+        jdbc.update(String.format(RESTART_IDENTITY_QUERY, "reviews", "review_id", reviews + 1));
+        // данные заменены целиком, в том числе уже прочитанные прогревом
+        filmCache.invalidateAll();
+        filmQueryCache.invalidate(query -> true, List.of());
+        userLikesCache.invalidateAll();
+        for (EntityVersions.Type type : EntityVersions.Type.values()) {
+            versions.bumpAll(type);
+        }
+
+        stats.setElapsedMillis(System.currentTimeMillis() - start);
+        log.info("Набор данных сгенерирован: {}", stats);
+        return stats;
+    }
+
+    private void generateUsers(DatasetProperties properties, int users) {
+        BatchWriter writer = new BatchWriter(USERS_INSERT_QUERY, properties.getBatchSize());
+        for (int id = 1; id <= users; id++) {
+            writer.add(id,
+                    "user" + id + "@filmorate.test",
+                    "user" + id,
+                    "User " + id,
+                    Date.valueOf(LocalDate.of(1960 + id % 45, 1 + id % 12, 1 + id % 28)));
+        }
+        writer.flush();
+    }
+
+    private void generateDirectors(DatasetProperties properties, int directors) {
+        BatchWriter writer = new BatchWriter(DIRECTORS_INSERT_QUERY, properties.getBatchSize());
+        for (int id = 1; id <= directors; id++) {
+            writer.add(id, "Director " + id);
+        }
+        writer.flush();
+    }
+
+    // возвращает "качество" фильма - среднюю оценку, вокруг которой разбрасываются лайки
+    private double[] generateFilms(DatasetProperties properties, SplittableRandom random, int films, int directors) {
+        double[] quality = new double[films + 1];
+        BatchWriter filmWriter = new BatchWriter(FILMS_INSERT_QUERY, properties.getBatchSize());
+        BatchWriter genreWriter = new BatchWriter(FILMS_GENRE_INSERT_QUERY, properties.getBatchSize());
+        BatchWriter directorWriter = new BatchWriter(FILMS_DIRECTOR_INSERT_QUERY, properties.getBatchSize());
+        for (int id = 1; id <= films; id++) {
+            quality[id] = 3 + random.nextDouble() * 6;
+            filmWriter.add(id,
+                    "Film " + id,
+                    "Description of film " + id,
+                    Date.valueOf(FIRST_RELEASE_DATE.plusDays(random.nextInt(RELEASE_DATE_RANGE_DAYS))),
+                    60 * (60 + random.nextInt(120)),
+                    1 + random.nextInt(MPA_COUNT));
+        }
+        filmWriter.flush();
+        for (int id = 1; id <= films; id++) {
+            int firstGenre = 1 + random.nextInt(GENRES_COUNT);
+            genreWriter.add(id, firstGenre);
+            if (random.nextInt(3) == 0) {
+                genreWriter.add(id, 1 + firstGenre % GENRES_COUNT);
+            }
+            directorWriter.add(id, 1 + random.nextInt(directors));
+        }
+        genreWriter.flush();
+        directorWriter.flush();
+        return quality;
+    }
+
+    private long generateLikes(DatasetProperties properties,
+                               SplittableRandom random,
+                               ZipfSampler filmPopularity,
+                               double[] quality,
+                               int users) {
+        BatchWriter writer = new BatchWriter(LIKES_INSERT_QUERY, properties.getBatchSize());
+        int maxLikes = Math.max(1, filmPopularity.size() / 10);
+        Set<Integer> liked = new HashSet<>();
+        for (int userId = 1; userId <= users; userId++) {
+            int count = Math.min(maxLikes, pareto(random, properties.getLikesPerUser()));
+            liked.clear();
+            while (liked.size() < count) {
+                int filmId = filmPopularity.next(random);
+                if (liked.add(filmId)) {
+                    long mark = Math.round(quality[filmId] + random.nextGaussian() * 1.8);
+                    writer.add(filmId, userId, (int) Math.max(0, Math.min(10, mark)));
+                }
+            }
+        }
+        writer.flush();
+        return writer.getWritten();
+    }
+
+    // граф друзей по модели Барабаши-Альберт: степени вершин распределены по степенному закону
+    private long generateFriends(DatasetProperties properties, SplittableRandom random, int users) {
+        BatchWriter writer = new BatchWriter(FRIENDS_INSERT_QUERY, properties.getBatchSize());
+        int perUser = properties.getFriendsPerUser();
+        int[] endpoints = new int[2 * perUser * users];
+        int endpointsSize = 0;
+        Set<Integer> friends = new HashSet<>();
+        for (int userId = 1; userId <= users; userId++) {
+            friends.clear();
+            int count = Math.min(perUser, userId - 1);
+            while (friends.size() < count) {
+                int friendId = endpointsSize == 0
+                        ? 1 + random.nextInt(userId - 1)
+                        : endpoints[random.nextInt(endpointsSize)];
+                if (friendId != userId && friends.add(friendId)) {
+                    writer.add(userId, friendId, FRIENDSHIP_STATUS_UNCONFIRMED);
+                    endpoints[endpointsSize++] = userId;
+                    endpoints[endpointsSize++] = friendId;
+                }
+            }
+        }
+        writer.flush();
+        return writer.getWritten();
+    }
+
+    private long generateReviews(DatasetProperties properties,
+                                 SplittableRandom random,
+                                 ZipfSampler filmPopularity,
+                                 int users,
+                                 int reviews) {
+        BatchWriter reviewWriter = new BatchWriter(REVIEWS_INSERT_QUERY, properties.getBatchSize());
+        BatchWriter voteWriter = new BatchWriter(USABILITY_REVIEWS_INSERT_QUERY, properties.getBatchSize());
+        Set<Integer> voters = new HashSet<>();
+        for (int reviewId = 1; reviewId <= reviews; reviewId++) {
+            reviewWriter.add(reviewId,
+                    filmPopularity.next(random),
+                    1 + random.nextInt(users),
+                    "Review " + reviewId,
+                    random.nextInt(4) != 0);
+        }
+        reviewWriter.flush();
+        for (int reviewId = 1; reviewId <= reviews; reviewId++) {
+            int votes = Math.min(users, pareto(random, properties.getVotesPerReview()));
+            voters.clear();
+            while (voters.size() < votes) {
+                int userId = 1 + random.nextInt(users);
+                if (voters.add(userId)) {
+                    voteWriter.add(userId, reviewId, random.nextInt(10) < 7 ? USABILITY_USEFUL : USABILITY_USELESS);
+                }
+            }
+        }
+        voteWriter.flush();
+        return voteWriter.getWritten();
+    }
+
+    // распределение Парето с alpha = 2 и заданным средним
+    private int pareto(SplittableRandom random, double mean) {
+        double scale = mean / 2;
+        return Math.max(1, (int) Math.ceil(scale / Math.sqrt(1.0 - random.nextDouble())));
+    }
+
+    private class BatchWriter {
+        private final String query;
+        private final int batchSize;
+        private final List<Object[]> batch = new ArrayList<>();
+        private long written;
+
+        BatchWriter(String query, int batchSize) {
+            this.query = query;
+            this.batchSize = batchSize;
+        }
+
+        void add(Object... params) {
+            batch.add(params);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            jdbc.batchUpdate(query, batch);
+            written += batch.size();
+            batch.clear();
+        }
+
+        long getWritten() {
+            return written;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.datagen;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// запуск: --spring.profiles.active=datagen --filmorate.datagen.scale=100 --filmorate.datagen.seed=42
+@Component
+@Profile("datagen")
+// набор данных генерируется до прогрева
+@Order(0)
+@RequiredArgsConstructor
+public class DatasetGeneratorRunner implements ApplicationRunner {
+    private final DatasetGenerator generator;
+    private final DatasetProperties properties;
+    private final ApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        generator.generate(properties);
+        if (properties.isExitOnFinish()) {
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.datagen;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "filmorate.datagen")
+public class DatasetProperties {
+    // одинаковый seed и scale всегда дают одинаковый набор данных
+    private long seed = 42L;
+    private double scale = 1.0;
+
+    // размеры при scale = 1
+    private int users = 1_000;
+    private int films = 500;
+    private int directors = 100;
+    private int reviews = 1_000;
+
+    private double likesPerUser = 20.0;
+    private int friendsPerUser = 5;
+    private double votesPerReview = 5.0;
+    private double zipfExponent = 1.1;
+
+    private int batchSize = 1_000;
+    private boolean exitOnFinish = false;
+
+    public int scaled(int baseSize) {
+        return Math.max(1, (int) Math.round(baseSize * scale));
+    }
+}
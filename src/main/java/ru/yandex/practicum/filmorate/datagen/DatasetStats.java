@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.datagen;
+
+import lombok.Data;
+
+@Data
+public class DatasetStats {
+    private long users;
+    private long films;
+    private long directors;
+    private long likes;
+    private long friends;
+    private long reviews;
+    private long reviewVotes;
+    private long elapsedMillis;
+}
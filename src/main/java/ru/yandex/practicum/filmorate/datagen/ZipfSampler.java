@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.datagen;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+public class ZipfSampler {
+    private final double[] cdf;
+    private final int[] ids;
+
+    // ранги перемешиваются, чтобы популярность не совпадала с порядком id
+    public ZipfSampler(int size, double exponent, RandomGenerator random) {
+        cdf = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cdf[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cdf[rank] /= sum;
+        }
+        ids = new int[size];
+        for (int idx = 0; idx < size; idx++) {
+            ids[idx] = idx + 1;
+        }
+        for (int idx = size - 1; idx > 0; idx--) {
+            int swap = random.nextInt(idx + 1);
+            int tmp = ids[idx];
+            ids[idx] = ids[swap];
+            ids[swap] = tmp;
+        }
+    }
+
+    public int next(RandomGenerator random) {
+        int rank = Arrays.binarySearch(cdf, random.nextDouble());
+        if (rank < 0) {
+            rank = -rank - 1;
+        }
+        return ids[Math.min(rank, ids.length - 1)];
+    }
+
+    public int size() {
+        return ids.length;
+    }
+}
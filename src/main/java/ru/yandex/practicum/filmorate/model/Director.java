@@ -13,4 +13,11 @@ public class Director {
 
     @NotBlank
     private String name;
+
+    private Long version;
+
+    public Director(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
 }
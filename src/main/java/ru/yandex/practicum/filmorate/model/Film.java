@@ -23,6 +23,9 @@ import java.util.HashSet;
 public class Film {
     private static final int DESCRIPTION_MAX_SIZE = 200;
     private Long id;
+
+    // версия строки: обновление с версией применяется, только если с тех пор строку никто не изменил
+    private Long version;
     @NotBlank
     private String name;
 
@@ -36,8 +39,9 @@ public class Film {
     @NotNull
     private Duration duration;
 
+    // сводка по оценкам; полный список лайков отдается постранично через GET /films/{id}/likes
     @Builder.Default
-    private Collection<FilmLike> likes = new HashSet<>();
+    private FilmRating rating = new FilmRating();
 
     @NotNull
     private Mpa mpa;
@@ -54,16 +58,8 @@ public class Film {
         return duration.getSeconds();
     }
 
-    public void addLike(FilmLike like) {
-        likes.add(like);
-    }
-
-    public void deleteLike(FilmLike like) {
-        likes.remove(like);
-    }
-
-    public int getLikesCount() {
-        return likes.size();
+    public long getLikesCount() {
+        return rating == null ? 0 : rating.getCount();
     }
 }
 
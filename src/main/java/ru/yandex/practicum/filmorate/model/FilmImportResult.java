@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// результат импорта одного фильма; index - порядковый номер фильма во входном потоке, начиная с 0
+@Data
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FilmImportResult {
+    public enum Status {
+        CREATED, INVALID, FAILED
+    }
+
+    private int index;
+    private Status status;
+    private Long id;
+    private String error;
+
+    public static FilmImportResult created(int index, Long id) {
+        return new FilmImportResult(index, Status.CREATED, id, null);
+    }
+
+    public static FilmImportResult invalid(int index, String error) {
+        return new FilmImportResult(index, Status.INVALID, null, error);
+    }
+
+    public static FilmImportResult failed(int index, String error) {
+        return new FilmImportResult(index, Status.FAILED, null, error);
+    }
+}
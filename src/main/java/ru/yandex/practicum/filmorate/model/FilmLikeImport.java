@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// оценка во входном потоке POST /films/likes/bulk
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmLikeImport {
+    private Long filmId;
+    private Long userId;
+    private Integer mark;
+}
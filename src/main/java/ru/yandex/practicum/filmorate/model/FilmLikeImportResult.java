@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+// итог импорта оценок; при миллионах строк отдается сводка, а не результат по каждой
+@Data
+public class FilmLikeImportResult {
+    // прочитано строк
+    private long received;
+    // некорректные строки: не указан фильм или пользователь, оценка вне диапазона
+    private long invalid;
+    // повторные оценки того же пользователя тому же фильму в одной порции, сохраняется последняя
+    private long duplicates;
+    // оценки несуществующих фильмов или пользователей
+    private long rejected;
+    private long saved;
+    // оценки из порций, которые не удалось сохранить из-за ошибки базы данных
+    private long failed;
+    private long films;
+    // ошибка разбора, прервавшая импорт, или первая ошибка сохранения порции; уже сохраненные порции остаются
+    private String error;
+}
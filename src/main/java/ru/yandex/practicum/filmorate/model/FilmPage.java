@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// страница списка фильмов; next - курсор следующей страницы, null на последней
+@Data
+@AllArgsConstructor
+public class FilmPage {
+    private List<Film> films;
+    private String next;
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmRating {
+    public static final int MARKS = 11;
+
+    private long count;
+
+    @JsonIgnore
+    private long sum;
+
+    // histogram[mark] - число оценок mark, от 0 до 10
+    private int[] histogram = new int[MARKS];
+
+    public Double getAverage() {
+        return count == 0 ? null : (double) sum / count;
+    }
+
+    public void addMark(int mark) {
+        count++;
+        sum += mark;
+        histogram[mark]++;
+    }
+
+    public void removeMark(int mark) {
+        count--;
+        sum -= mark;
+        histogram[mark]--;
+    }
+}
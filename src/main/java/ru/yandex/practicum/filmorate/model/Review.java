@@ -15,6 +15,9 @@ public class Review {
 
     private Long reviewId;
 
+    // версия строки: обновление с версией применяется, только если с тех пор строку никто не изменил
+    private Long version;
+
     @NotNull(message = "Id фильма не может быть пустым.")
     private Long filmId;
 
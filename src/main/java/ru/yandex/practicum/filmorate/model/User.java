@@ -21,6 +21,9 @@ import java.util.HashSet;
 public class User {
     private Long id;
 
+    // версия строки: обновление с версией применяется, только если с тех пор строку никто не изменил
+    private Long version;
+
     @Email
     @NotBlank
     private String email;
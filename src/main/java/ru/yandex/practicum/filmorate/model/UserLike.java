@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// оценка фильма в списке оценок пользователя
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserLike {
+
+    @JsonProperty("film_id")
+    private Long filmId;
+
+    private Integer mark;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// страница оценок пользователя; next - курсор следующей страницы, null на последней
+@Data
+@AllArgsConstructor
+public class UserLikePage {
+    private List<UserLike> likes;
+    private String next;
+}
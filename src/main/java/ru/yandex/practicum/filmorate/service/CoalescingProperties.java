@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "filmorate.coalescing")
+public class CoalescingProperties {
+    private boolean enabled = true;
+
+    // отключение для отдельного метода: filmorate.coalescing.methods.film-by-id=false
+    private Map<String, Boolean> methods = new HashMap<>();
+
+    public boolean isEnabled(String method) {
+        return enabled && methods.getOrDefault(method, true);
+    }
+}
@@ -2,15 +2,25 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.cache.FilmQuery;
+import ru.yandex.practicum.filmorate.cache.FilmQueryCache;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.FilmDirectorStorage;
 
 import java.util.Collection;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class DirectorService {
     private final DirectorDbStorage directorDbStorage;
+    private final FilmDirectorStorage filmDirectorStorage;
+    private final FilmCache filmCache;
+    private final FilmQueryCache filmQueryCache;
+    private final EntityVersions versions;
 
     public Collection<Director> getAllDirectors() {
         return directorDbStorage.getAllDirectors();
@@ -25,10 +35,24 @@ public class DirectorService {
     }
 
     public Director updateDirector(Director director) {
-        return directorDbStorage.updateDirector(director);
+        Director updated = directorDbStorage.updateDirector(director);
+        Collection<Long> filmsId = filmDirectorStorage.findFilmsIdOfDirector(director.getId());
+        filmCache.invalidateAll(filmsId);
+        // по новому имени фильмы режиссера могут найтись поиском, в котором их раньше не было
+        filmQueryCache.invalidate(query -> query instanceof FilmQuery.Search search
+                && search.directorMatches(List.of(updated.getName())), filmsId);
+        // режиссер входит в ответ по каждому своему фильму
+        versions.bumpAll(EntityVersions.Type.FILM);
+        return updated;
     }
 
     public Long deleteDirector(Long id) {
-        return directorDbStorage.deleteDirector(id);
+        // связи с фильмами удаляются каскадно, поэтому список фильмов нужен до удаления
+        Collection<Long> filmsId = filmDirectorStorage.findFilmsIdOfDirector(id);
+        Long deleted = directorDbStorage.deleteDirector(id);
+        filmCache.invalidateAll(filmsId);
+        filmQueryCache.invalidate(query -> false, filmsId);
+        versions.bumpAll(EntityVersions.Type.FILM);
+        return deleted;
     }
 }
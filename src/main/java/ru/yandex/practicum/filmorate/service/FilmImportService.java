@@ -0,0 +1,275 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.cache.FilmQuery;
+import ru.yandex.practicum.filmorate.cache.FilmQueryCache;
+import ru.yandex.practicum.filmorate.cache.UserLikesCache;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.FilmRatingStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.UserFeedStorage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+// Импорт фильмов потоком: фильмы проверяются по справочникам, прочитанным один раз на весь импорт,
+// и сохраняются порциями по chunk-size, каждая порция - одной транзакцией с пакетными вставками.
+// Результат по фильму отдается, как только он известен: ошибки проверки сразу, созданные фильмы после фиксации порции.
+// Оценки импортируются так же порциями: внутри порции повторы схлопываются, сводка фильма пересчитывается один раз.
+@Slf4j
+@Service
+public class FilmImportService {
+    private final FilmStorage filmStorage;
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final DirectorStorage directorStorage;
+    private final FilmRatingStorage filmRatingStorage;
+    private final UserFeedStorage userFeedStorage;
+    private final FilmCache filmCache;
+    private final FilmQueryCache filmQueryCache;
+    private final UserLikesCache userLikesCache;
+    private final TrendingFilms trendingFilms;
+    private final EntityVersions versions;
+    private final Validator validator;
+    private final int chunkSize;
+    private final int likesChunkSize;
+
+    public FilmImportService(FilmStorage filmStorage,
+                             GenreStorage genreStorage,
+                             MpaStorage mpaStorage,
+                             DirectorStorage directorStorage,
+                             FilmRatingStorage filmRatingStorage,
+                             UserFeedStorage userFeedStorage,
+                             FilmCache filmCache,
+                             FilmQueryCache filmQueryCache,
+                             UserLikesCache userLikesCache,
+                             TrendingFilms trendingFilms,
+                             EntityVersions versions,
+                             Validator validator,
+                             @Value("${filmorate.films.bulk.chunk-size:500}") int chunkSize,
+                             @Value("${filmorate.films.likes.bulk.chunk-size:5000}") int likesChunkSize) {
+        this.filmStorage = filmStorage;
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.directorStorage = directorStorage;
+        this.filmRatingStorage = filmRatingStorage;
+        this.userFeedStorage = userFeedStorage;
+        this.filmCache = filmCache;
+        this.filmQueryCache = filmQueryCache;
+        this.userLikesCache = userLikesCache;
+        this.trendingFilms = trendingFilms;
+        this.versions = versions;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+        this.likesChunkSize = likesChunkSize;
+    }
+
+    public FilmLikeImportResult importLikes(Iterator<FilmLikeImport> likes) {
+        FilmLikeImportResult result = new FilmLikeImportResult();
+        Set<Long> films = new HashSet<>();
+        // ключ сравнивается по фильму и пользователю, значение - последняя оценка пары
+        Map<FilmLike, FilmLike> chunk = new LinkedHashMap<>();
+        while (true) {
+            FilmLikeImport like;
+            try {
+                if (!likes.hasNext()) {
+                    break;
+                }
+                like = likes.next();
+            } catch (RuntimeException e) {
+                // строки, прочитанные до ошибки разбора, сохраняются
+                result.setError("Не удалось разобрать оценку: " + e.getMessage());
+                break;
+            }
+            result.setReceived(result.getReceived() + 1);
+            if (like == null || like.getFilmId() == null || like.getUserId() == null || like.getMark() == null
+                    || like.getMark() < 0 || like.getMark() >= FilmRating.MARKS) {
+                result.setInvalid(result.getInvalid() + 1);
+                continue;
+            }
+            FilmLike filmLike = new FilmLike(like.getFilmId(), like.getUserId(), like.getMark());
+            if (chunk.put(filmLike, filmLike) != null) {
+                result.setDuplicates(result.getDuplicates() + 1);
+            }
+            if (chunk.size() >= likesChunkSize) {
+                saveLikes(chunk, result, films);
+            }
+        }
+        saveLikes(chunk, result, films);
+        result.setFilms(films.size());
+        log.info("Импорт оценок завершен: {}", result);
+        return result;
+    }
+
+    private void saveLikes(Map<FilmLike, FilmLike> chunk, FilmLikeImportResult result, Set<Long> films) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<FilmLike> likes = List.copyOf(chunk.values());
+        chunk.clear();
+        List<FilmLike> saved;
+        try {
+            saved = filmRatingStorage.addMarks(likes);
+        } catch (RuntimeException e) {
+            // порция откатывается целиком, следующие порции импортируются
+            log.warn("Не удалось сохранить порцию из {} оценок: {}", likes.size(), e.getMessage());
+            result.setFailed(result.getFailed() + likes.size());
+            if (result.getError() == null) {
+                result.setError("Порция оценок не сохранена: " + e.getMessage());
+            }
+            return;
+        }
+        Instant now = Instant.now();
+        userFeedStorage.createAll(saved.stream()
+                .map(like -> UserFeed.builder()
+                        .userId(like.getUserId())
+                        .entityId(like.getFilmId())
+                        .timestamp(now)
+                        .eventType(EventType.LIKE.name())
+                        .operation(OperationType.ADD.name())
+                        .build())
+                .toList());
+        Set<Long> filmsId = saved.stream()
+                .map(FilmLike::getFilmId)
+                .collect(Collectors.toSet());
+        filmCache.invalidateAll(filmsId);
+        userLikesCache.invalidateAll(saved.stream()
+                .map(FilmLike::getUserId)
+                .collect(Collectors.toSet()));
+        // импортированная оценка сохранена без времени и заменяет прежний голос пользователя в окнах
+        saved.forEach(like -> trendingFilms.remove(like.getFilmId(), like.getUserId()));
+        // изменение оценок меняет порядок популярных фильмов
+        filmQueryCache.invalidate(query -> query instanceof FilmQuery.Popular, filmsId);
+        filmsId.forEach(id -> versions.bump(EntityVersions.Type.FILM, id));
+        films.addAll(filmsId);
+        result.setSaved(result.getSaved() + saved.size());
+        result.setRejected(result.getRejected() + likes.size() - saved.size());
+    }
+
+    public void importFilms(Iterator<Film> films, Consumer<FilmImportResult> results) {
+        Set<Integer> genresId = genreStorage.findAll().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toSet());
+        Set<Integer> mpasId = mpaStorage.findAll().stream()
+                .map(Mpa::getId)
+                .collect(Collectors.toSet());
+        Set<Long> directorsId = directorStorage.getAllDirectors().stream()
+                .map(Director::getId)
+                .collect(Collectors.toCollection(HashSet::new));
+        List<Film> chunk = new ArrayList<>(chunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(chunkSize);
+        int index = 0;
+        int created = 0;
+        while (true) {
+            Film film;
+            try {
+                if (!films.hasNext()) {
+                    break;
+                }
+                film = films.next();
+            } catch (RuntimeException e) {
+                // после ошибки разбора положение в потоке не определено, дальнейшие фильмы не читаются
+                created += save(chunk, chunkIndexes, results);
+                results.accept(FilmImportResult.failed(index, "Не удалось разобрать фильм: " + e.getMessage()));
+                break;
+            }
+            String error = validate(film, genresId, mpasId, directorsId);
+            if (error != null) {
+                results.accept(FilmImportResult.invalid(index, error));
+            } else {
+                chunk.add(film);
+                chunkIndexes.add(index);
+                if (chunk.size() >= chunkSize) {
+                    created += save(chunk, chunkIndexes, results);
+                }
+            }
+            index++;
+        }
+        created += save(chunk, chunkIndexes, results);
+        log.info("Импорт фильмов завершен: получено {}, добавлено {}", index, created);
+    }
+
+    private int save(List<Film> chunk, List<Integer> chunkIndexes, Consumer<FilmImportResult> results) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        List<Film> films = List.copyOf(chunk);
+        List<Integer> indexes = List.copyOf(chunkIndexes);
+        chunk.clear();
+        chunkIndexes.clear();
+        try {
+            filmStorage.createAll(films);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сохранить порцию из {} фильмов: {}", films.size(), e.getMessage());
+            indexes.forEach(index -> results.accept(FilmImportResult.failed(index,
+                    "Порция фильмов не сохранена: " + e.getMessage())));
+            return 0;
+        }
+        filmQueryCache.invalidate(query -> films.stream().anyMatch(query::matches), List.of());
+        films.forEach(film -> versions.bump(EntityVersions.Type.FILM, film.getId()));
+        for (int i = 0; i < films.size(); i++) {
+            results.accept(FilmImportResult.created(indexes.get(i), films.get(i).getId()));
+        }
+        return films.size();
+    }
+
+    private String validate(Film film, Set<Integer> genresId, Set<Integer> mpasId, Set<Long> directorsId) {
+        if (film == null) {
+            return "Фильм не указан";
+        }
+        if (film.getDuration() == null) {
+            return "duration: не должно равняться null";
+        }
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<Film> violation = violations.iterator().next();
+            return violation.getPropertyPath() + ": " + violation.getMessage();
+        }
+        if (film.getReleaseDate().isBefore(FilmService.MIN_RELEASE_DATE)) {
+            return "Дата релиза не может быть раньше 28 декабря 1895 года!";
+        }
+        if (!mpasId.contains(film.getMpa().getId())) {
+            return "Рейтинг MPA с id = " + film.getMpa().getId() + " не найден!";
+        }
+        if (film.getGenres() == null) {
+            film.setGenres(new ArrayList<>());
+        }
+        for (Genre genre : film.getGenres()) {
+            if (genre == null) {
+                return "genres: элемент не должен равняться null";
+            }
+            if (!genresId.contains(genre.getId())) {
+                return "Жанр с id = " + genre.getId() + " не найден!";
+            }
+        }
+        if (film.getDirectors() == null) {
+            film.setDirectors(new ArrayList<>());
+        }
+        for (Director director : film.getDirectors()) {
+            if (director == null) {
+                return "directors: элемент не должен равняться null";
+            }
+            if (!directorsId.contains(director.getId())) {
+                return "Режиссер с id = " + director.getId() + " не найден";
+            }
+        }
+        return null;
+    }
+}
@@ -2,15 +2,27 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.cache.FilmQuery;
+import ru.yandex.practicum.filmorate.cache.FilmQueryCache;
+import ru.yandex.practicum.filmorate.cache.UserLikesCache;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.*;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -27,43 +39,78 @@ public class FilmService {
     private final FilmLikeStorage filmLikeStorage;
     private final MpaStorage mpaStorage;
     private final GenreStorage genreStorage;
+    private final ExecutorService hydrationExecutor;
+    private final FilmCache filmCache;
+    private final FilmQueryCache filmQueryCache;
+    private final RequestCoalescer coalescer;
+    private final LikeWriteBuffer likeWriteBuffer;
+    private final TrendingFilms trendingFilms;
+    private final UserLikesCache userLikesCache;
+    private final EntityVersions versions;
+
+    @Value("${filmorate.films.hydration.parallel:true}")
+    private boolean parallelHydration;
+
+    static final LocalDate MIN_RELEASE_DATE = LocalDate.of(1895, 1, 28);
 
     private static final String BY_DIRECTOR = "director";
     private static final String BY_TITLE = "title";
 
     public Collection<Film> findAll() {
-        Collection<Film> films = filmStorage.findAll();
-        setFilmsGenres(films);
-        setFilmsDirectors(films);
-        setFilmsLikes(films);
-        return films;
+        return coalescer.execute("films-all", () -> {
+            Collection<Film> films = filmStorage.findAll();
+            hydrate(films);
+            return films;
+        });
     }
 
     public Film findById(Long id) {
+        return filmCache.get(id, key -> coalescer.execute("film-by-id", () -> loadFilm(key), key));
+    }
+
+    private Film loadFilm(Long id) {
         Collection<Film> films = List.of(filmStorage.findById(id));
-        setFilmsGenres(films);
-        setFilmsDirectors(films);
-        setFilmsLikes(films);
-        return films.iterator().next();
+        hydrate(films);
+        Film film = films.iterator().next();
+        // пользователь должен видеть свою оценку, даже если она еще не сохранена в БД
+        if (likeWriteBuffer.hasPending(id)) {
+            film.setRating(likeWriteBuffer.rating(id));
+        }
+        return film;
     }
 
     public Film create(Film film) {
         validate(film);
-        return filmStorage.create(film);
+        Film created = filmStorage.create(film);
+        filmQueryCache.invalidate(query -> query.matches(created), List.of());
+        versions.bump(EntityVersions.Type.FILM, created.getId());
+        return created;
     }
 
     public Film update(Film newFilm) {
         validate(newFilm);
-        return filmStorage.update(newFilm);
+        Film oldFilm = newFilm.getId() == null ? null : findById(newFilm.getId());
+        Film film = filmStorage.update(newFilm);
+        filmCache.invalidate(film.getId());
+        // фильм мог выйти из выборок по старым жанрам, году и названию и попасть в выборки по новым
+        filmQueryCache.invalidate(query -> query.matches(oldFilm) || query.matches(film), List.of(film.getId()));
+        versions.bump(EntityVersions.Type.FILM, film.getId());
+        return film;
     }
 
     public void delete(Long id) {
         filmStorage.delete(id);
+        trendingFilms.remove(id);
+        filmCache.invalidate(id);
+        filmQueryCache.invalidate(query -> false, List.of(id));
+        versions.bump(EntityVersions.Type.FILM, id);
     }
 
-    public Film addLike(Long id, Long userId, Integer mark) {
+    public FilmRating addLike(Long id, Long userId, Integer mark) {
         if (!userStorage.isUserExists(userId))
             throw new NotFoundException("Пользователь с id = " + userId + " не найден");
+        if (mark == null || mark < 0 || mark >= FilmRating.MARKS)
+            throw new ValidationException("Оценка должна быть от 0 до " + (FilmRating.MARKS - 1));
         userFeedStorage.create(UserFeed.builder()
                 .eventId(null)
                 .userId(userId)
@@ -72,12 +119,14 @@ public class FilmService {
                 .eventType(EventType.LIKE.name())
                 .operation(OperationType.ADD.name())
                 .build());
-        Film film = filmStorage.addLike(id, userId, mark);
-        setFilmsLikes(List.of(film));
-        return film;
+        FilmRating rating = saveLike(id, userId, mark);
+        userLikesCache.add(userId, id);
+        trendingFilms.record(id, userId, Instant.now());
+        onRatingChanged(id);
+        return rating;
     }
 
-    public Film deleteLike(Long id, Long userId) {
+    public FilmRating deleteLike(Long id, Long userId) {
         if (!userStorage.isUserExists(userId))
             throw new NotFoundException("Пользователь с id = " + userId + " не найден");
         userFeedStorage.create(UserFeed.builder()
@@ -88,26 +137,106 @@ public class FilmService {
                 .eventType(EventType.LIKE.name())
                 .operation(OperationType.REMOVE.name())
                 .build());
-        Film film = filmStorage.deleteLike(id, userId);
-        setFilmsLikes(List.of(film));
-        return film;
+        FilmRating rating = saveLike(id, userId, null);
+        userLikesCache.remove(userId, id);
+        trendingFilms.remove(id, userId);
+        onRatingChanged(id);
+        return rating;
     }
 
-    public Collection<Film> getPopular(Long count, Long genreId, int year) {
-        Collection<Film> films = filmStorage.getPopular(count, genreId, year);
-        setFilmsGenres(films);
-        setFilmsDirectors(films);
-        setFilmsLikes(films);
+    // mark == null - удаление оценки
+    private FilmRating saveLike(Long id, Long userId, Integer mark) {
+        if (!likeWriteBuffer.isEnabled()) {
+            return mark == null ? filmStorage.deleteLike(id, userId) : filmStorage.addLike(id, userId, mark);
+        }
+        if (!filmStorage.isFilmExists(id))
+            throw new NotFoundException("Фильм с id = " + id + " не найден");
+        likeWriteBuffer.put(id, userId, mark);
+        return likeWriteBuffer.rating(id);
+    }
+
+    // изменение оценки меняет порядок во всех выборках, куда фильм может попасть по жанру и году.
+    // Жанры и год берутся из кэша, чтобы не перечитывать фильм на каждый голос;
+    // если фильма в кэше нет, сбрасываются все выборки популярных
+    private void onRatingChanged(Long id) {
+        Film cached = filmCache.peek(id);
+        filmCache.invalidate(id);
+        filmQueryCache.invalidate(query -> query instanceof FilmQuery.Popular
+                && (cached == null || query.matches(cached)), List.of(id));
+        versions.bump(EntityVersions.Type.FILM, id);
+    }
+
+    public Collection<FilmLike> findLikes(Long id, int from, int size) {
+        if (from < 0 || size <= 0)
+            throw new ValidationException("Параметр from не может быть отрицательным, size должен быть больше 0");
+        if (!filmStorage.isFilmExists(id))
+            throw new NotFoundException("Фильм с id = " + id + " не найден");
+        // страница читается по индексу из БД, поэтому несохраненные оценки сначала сбрасываются
+        if (likeWriteBuffer.hasPending(id)) {
+            likeWriteBuffer.flush();
+        }
+        return filmLikeStorage.findLikesOfFilm(id, from, size);
+    }
+
+    public UserLikePage findLikesOfUser(Long userId, String cursor, int size) {
+        if (size <= 0)
+            throw new ValidationException("Параметр size должен быть больше 0");
+        if (!userStorage.isUserExists(userId))
+            throw new NotFoundException(String.format("Пользователь с id = %s не существует.", userId));
+        // несохраненные оценки пользователя берутся до чтения страницы: сохраненная между ними оценка
+        // уже есть в БД и накладывается тем же значением, а удаленная не читается ни там, ни там
+        Map<Long, Integer> pending = likeWriteBuffer.isEnabled() ? likeWriteBuffer.marksOfUser(userId) : Map.of();
+        return filmLikeStorage.findLikesOfUser(userId, cursor, size, pending);
+    }
+
+    public Collection<Film> getPopular(Long count, Long genreId, int year, String rank) {
+        return filmQueryCache.get(FilmQuery.popular(count, genreId, year, getRankType(rank)), query -> coalescer.execute(
+                "films-popular", () -> {
+                    FilmQuery.Popular popular = (FilmQuery.Popular) query;
+                    Collection<Film> films = filmStorage.getPopular(popular.count(), popular.genreId(), popular.year(),
+                            popular.rank());
+                    hydrate(films);
+                    return films;
+                }, query));
+    }
+
+    public Collection<Film> getTrending(String window, int count, boolean decay) {
+        if (count <= 0)
+            throw new ValidationException("Параметр count должен быть больше 0");
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(window);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Некорректное окно " + window);
+        }
+        // фильмы по отдельности берутся из кэша, оценки за окно считаются в памяти.
+        // Фильм, удаленный в обход сервиса, забывается, и выборка повторяется без него
+        boolean missing;
+        List<Film> films = new ArrayList<>();
+        do {
+            missing = false;
+            films.clear();
+            for (Long filmId : trendingFilms.top(duration, count, decay)) {
+                try {
+                    films.add(findById(filmId));
+                } catch (NotFoundException e) {
+                    trendingFilms.remove(filmId);
+                    missing = true;
+                }
+            }
+        } while (missing);
         return films;
     }
 
     public Collection<Film> searchFilms(String query, List<String> by) {
         SearchType searchType = getSearchType(by);
-        Collection<Film> films = filmStorage.searchFilms(query, searchType);
-        setFilmsGenres(films);
-        setFilmsDirectors(films);
-        setFilmsLikes(films);
-        return films;
+        return filmQueryCache.get(FilmQuery.search(query, searchType), key -> coalescer.execute(
+                "films-search", () -> {
+                    FilmQuery.Search search = (FilmQuery.Search) key;
+                    Collection<Film> films = filmStorage.searchFilms(search.query(), search.searchType());
+                    hydrate(films);
+                    return films;
+                }, key));
     }
 
     private SearchType getSearchType(List<String> by) {
@@ -122,39 +251,54 @@ public class FilmService {
         return SearchType.TITLE;
     }
 
-    public Collection<Film> getFilmsByDirector(Long id, String sortBy) {
+    // avg - средняя оценка, bayes - среднее с априорными оценками, wilson - нижняя граница интервала Уилсона
+    private RankType getRankType(String rank) {
+        try {
+            return RankType.valueOf(rank.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Вид ранжирования " + rank + " не поддерживается, доступны: avg, bayes, wilson");
+        }
+    }
+
+    public FilmPage getFilmsByDirector(Long id, String sortBy, String rank, String cursor, int size) {
+        if (size <= 0)
+            throw new ValidationException("Параметр size должен быть больше 0");
+        RankType rankType = getRankType(rank);
         if (!directorDbStorage.isDirectorExists(id))
             throw new NotFoundException("Режисер с id = " + id + " не найден");
         log.info("Получение списка фильмов режиссера {} ", id);
-        Collection<Film> films = filmStorage.getFilmsByDirector(id, sortBy);
-        setFilmsGenres(films);
-        setFilmsDirectors(films);
-        setFilmsLikes(films);
-        return films;
+        return coalescer.execute("films-by-director", () -> {
+            FilmPage page = filmStorage.getFilmsByDirector(id, sortBy, rankType, cursor, size);
+            // жанры и режиссеры загружаются только для фильмов страницы
+            hydrate(page.getFilms());
+            return page;
+        }, id, sortBy, rankType, cursor, size);
     }
 
     public Collection<Film> getRecommendedFilmsForUser(Long id) {
-        Collection<Film> films = filmStorage.getRecommendedFilmsForUser(id);
-        setFilmsGenres(films);
-        setFilmsDirectors(films);
-        setFilmsLikes(films);
-        return films;
+        return coalescer.execute("films-recommended", () -> {
+            Collection<Film> films = filmStorage.getRecommendedFilmsForUser(id);
+            hydrate(films);
+            return films;
+        }, id);
     }
 
     public Collection<Film> getCommonFilms(Long userId, Long friendId) {
         if (!userStorage.isUserExists(userId))
             throw new NotFoundException(String.format("Пользователь с id = %s не существует.", userId));
-        if (!userStorage.isUserExists(userId))
+        if (!userStorage.isUserExists(friendId))
             throw new NotFoundException(String.format("Пользователь с id = %s не существует.", friendId));
-        Collection<Film> films = filmStorage.getCommonFilms(userId, friendId);
-        setFilmsGenres(films);
-        setFilmsDirectors(films);
-        setFilmsLikes(films);
-        return films;
+        return coalescer.execute("films-common", () -> {
+            // пересечение считается в памяти по отсортированным id фильмов каждого пользователя
+            long[] common = userLikesCache.common(userId, friendId);
+            Collection<Film> films = filmStorage.findByIdsSortedByRating(Arrays.stream(common).boxed().toList());
+            hydrate(films);
+            return films;
+        }, userId, friendId);
     }
 
     private boolean validate(Film film) {
-        if (film.getReleaseDate().isBefore(LocalDate.of(1895, 1, 28))) {
+        if (film.getReleaseDate().isBefore(MIN_RELEASE_DATE)) {
             throw new ValidationException("Дата релиза не может быть раньше 28 декабря 1895 года!");
         }
         genreStorage.checkGenresExists(film.getGenres());
@@ -165,53 +309,65 @@ public class FilmService {
         return true;
     }
 
-    private void setFilmsGenres(Collection<Film> films) {
-        String filmsId = films.stream()
-                .map(film -> {
-                    return film.getId().toString();
-                })
-                .collect(Collectors.joining(", "));
-        Collection<FilmGenre> filmGenres = filmGenreStorage.findGenresOfFilms(filmsId);
-        for (Film film : films) {
-            film.setGenres(filmGenres.stream()
-                    .filter(filmGenre -> film.getId() == filmGenre.getFilmId())
-                    .map(filmGenre -> new Genre(
-                            filmGenre.getGenreId(),
-                            filmGenre.getGenre())
-                    )
-                    .collect(Collectors.toList()));
+    // жанры и режиссеры загружаются независимыми запросами, поэтому их можно выполнять параллельно
+    private void hydrate(Collection<Film> films) {
+        if (films.isEmpty() || filmStorage.isAggregatedRead()) {
+            return;
         }
+        // другие потоки получат отдельные соединения и не увидят незафиксированных изменений текущей транзакции
+        if (!parallelHydration || TransactionSynchronizationManager.isActualTransactionActive()) {
+            setFilmsGenres(films);
+            setFilmsDirectors(films);
+            return;
+        }
+        Future<?> directors = hydrationExecutor.submit(() -> setFilmsDirectors(films));
+        setFilmsGenres(films);
+        await(directors);
     }
 
-    private void setFilmsDirectors(Collection<Film> films) {
-        String filmsId = films.stream()
-                .map(film -> {
-                    return film.getId().toString();
-                })
+    private void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new InternalServerException(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("Загрузка данных фильмов прервана");
+        }
+    }
+
+    private String joinFilmsId(Collection<Film> films) {
+        return films.stream()
+                .map(film -> film.getId().toString())
                 .collect(Collectors.joining(", "));
-        Collection<FilmDirector> filmDirectors = filmDirectorStorage.findDirectorsOfFilms(filmsId);
+    }
+
+    private void setFilmsGenres(Collection<Film> films) {
+        Map<Long, List<Genre>> genresByFilm = filmGenreStorage.findGenresOfFilms(joinFilmsId(films)).stream()
+                .collect(Collectors.groupingBy(
+                        FilmGenre::getFilmId,
+                        Collectors.mapping(filmGenre -> new Genre(
+                                        filmGenre.getGenreId(),
+                                        filmGenre.getGenre()),
+                                Collectors.toList())));
         for (Film film : films) {
-            film.setDirectors(filmDirectors.stream()
-                    .filter(filmDirector -> film.getId() == filmDirector.getFilmId())
-                    .map(filmDirector -> new Director(
-                            filmDirector.getDirectorId(),
-                            filmDirector.getName())
-                    )
-                    .collect(Collectors.toList()));
+            film.setGenres(genresByFilm.getOrDefault(film.getId(), new ArrayList<>()));
         }
     }
 
-    private void setFilmsLikes(Collection<Film> films) {
-        String filmsId = films.stream()
-                .map(film -> {
-                    return film.getId().toString();
-                })
-                .collect(Collectors.joining(", "));
-        Collection<FilmLike> filmLikes = filmLikeStorage.findLikesOfFilms(filmsId);
+    private void setFilmsDirectors(Collection<Film> films) {
+        Map<Long, List<Director>> directorsByFilm = filmDirectorStorage.findDirectorsOfFilms(joinFilmsId(films)).stream()
+                .collect(Collectors.groupingBy(
+                        FilmDirector::getFilmId,
+                        Collectors.mapping(filmDirector -> new Director(
+                                        filmDirector.getDirectorId(),
+                                        filmDirector.getName()),
+                                Collectors.toList())));
         for (Film film : films) {
-            film.setLikes(filmLikes.stream()
-                    .filter(filmLike -> film.getId().equals(filmLike.getFilmId()))
-                    .toList());
+            film.setDirectors(directorsByFilm.getOrDefault(film.getId(), new ArrayList<>()));
         }
     }
 }
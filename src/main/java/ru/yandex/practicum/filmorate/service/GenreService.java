@@ -11,12 +11,13 @@ import java.util.Collection;
 @RequiredArgsConstructor
 public class GenreService {
     private final GenreStorage storage;
+    private final RequestCoalescer coalescer;
 
     public Collection<Genre> findAll() {
-        return storage.findAll();
+        return coalescer.execute("genres-all", storage::findAll);
     }
 
     public Genre findById(int id) {
-        return storage.findById(id);
+        return coalescer.execute("genre-by-id", () -> storage.findById(id), id);
     }
 }
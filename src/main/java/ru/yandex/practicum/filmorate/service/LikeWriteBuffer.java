@@ -0,0 +1,378 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.cache.FilmQuery;
+import ru.yandex.practicum.filmorate.cache.FilmQueryCache;
+import ru.yandex.practicum.filmorate.cache.UserLikesCache;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.FilmRatingStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// Отложенная запись оценок. Оценка попадает в шард по id фильма, внутри фильма по пользователю
+// остается только последняя (удаление - отдельное значение), и фоновый поток раз в flush-interval
+// сохраняет накопленное одной пакетной транзакцией на порцию.
+// Перед попаданием в буфер оценка дописывается в журнал (WAL) на диске: после падения журнал
+// проигрывается при старте. wal-sync-interval задает, сколько последних оценок можно потерять
+// при отказе машины: 0 - fsync на каждую оценку до ответа клиенту, иначе fsync не реже этого интервала.
+// Журнал пишется сегментами: перед сбросом открывается новый сегмент, а старые удаляются,
+// когда все, что в них было, сохранено в БД.
+@Slf4j
+@Component
+public class LikeWriteBuffer {
+    static final int REMOVED = -1;
+    // film_id, user_id, mark
+    private static final int RECORD_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "likes-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final FilmRatingStorage filmRatingStorage;
+    private final FilmCache filmCache;
+    private final FilmQueryCache filmQueryCache;
+    private final UserLikesCache userLikesCache;
+    private final EntityVersions versions;
+    private final boolean enabled;
+    private final List<Map<Long, Map<Long, Integer>>> shards;
+    private final Duration flushInterval;
+    private final int maxPending;
+    private final int chunkSize;
+    private final Path walDir;
+    private final Duration walSyncInterval;
+    private final AtomicLong pending = new AtomicLong();
+    // запись в журнал и в буфер - под чтением, смена сегмента - под записью
+    private final ReentrantReadWriteLock walLock = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final List<Path> closedSegments = new ArrayList<>();
+    private final Timer flushTimer;
+    private FileChannel wal;
+    private Path walSegment;
+    private long segmentSeq;
+    private ScheduledExecutorService scheduler;
+
+    public LikeWriteBuffer(FilmRatingStorage filmRatingStorage,
+                           FilmCache filmCache,
+                           FilmQueryCache filmQueryCache,
+                           UserLikesCache userLikesCache,
+                           EntityVersions versions,
+                           ObjectProvider<MeterRegistry> registryProvider,
+                           @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes.write-behind.shards:16}") int shards,
+                           @Value("${filmorate.likes.write-behind.flush-interval:200ms}") Duration flushInterval,
+                           @Value("${filmorate.likes.write-behind.max-pending:50000}") int maxPending,
+                           @Value("${filmorate.films.likes.bulk.chunk-size:5000}") int chunkSize,
+                           @Value("${filmorate.likes.write-behind.wal-dir:./db/likes-wal}") Path walDir,
+                           @Value("${filmorate.likes.write-behind.wal-sync-interval:100ms}") Duration walSyncInterval) {
+        this.filmRatingStorage = filmRatingStorage;
+        this.filmCache = filmCache;
+        this.filmQueryCache = filmQueryCache;
+        this.userLikesCache = userLikesCache;
+        this.versions = versions;
+        this.enabled = enabled;
+        this.shards = Stream.<Map<Long, Map<Long, Integer>>>generate(ConcurrentHashMap::new)
+                .limit(shards)
+                .toList();
+        this.flushInterval = flushInterval;
+        this.maxPending = maxPending;
+        this.chunkSize = chunkSize;
+        this.walDir = walDir;
+        this.walSyncInterval = walSyncInterval;
+        MeterRegistry registry = registryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        this.flushTimer = Timer.builder("filmorate.likes.write-behind.flush")
+                .description("Время сохранения накопленных оценок")
+                .register(registry);
+        Gauge.builder("filmorate.likes.write-behind.pending", pending, AtomicLong::get)
+                .description("Число оценок в буфере, еще не сохраненных в БД")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(walDir);
+            recover();
+            openSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал оценок " + walDir, e);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("likes-write-behind")
+                .daemon(true)
+                .factory());
+        scheduler.scheduleWithFixedDelay(this::flushQuietly,
+                flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        if (pending.get() > 0) {
+            flushQuietly();
+        }
+        if (!walSyncInterval.isZero()) {
+            scheduler.scheduleWithFixedDelay(this::syncQuietly,
+                    walSyncInterval.toMillis(), walSyncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        log.info("Отложенная запись оценок включена: шардов = {}, сброс каждые {}, журнал {}",
+                shards.size(), flushInterval, walDir);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.close();
+        flushQuietly();
+        try {
+            wal.close();
+            if (pending.get() == 0) {
+                Files.deleteIfExists(walSegment);
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось закрыть журнал оценок: {}", e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // mark == null - удаление оценки
+    public void put(Long filmId, Long userId, Integer mark) {
+        int value = mark == null ? REMOVED : mark;
+        walLock.readLock().lock();
+        try {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE)
+                    .putLong(filmId)
+                    .putLong(userId)
+                    .putInt(value)
+                    .flip();
+            while (record.hasRemaining()) {
+                wal.write(record);
+            }
+            if (walSyncInterval.isZero()) {
+                wal.force(false);
+            }
+            buffer(filmId, userId, value);
+        } catch (IOException e) {
+            throw new InternalServerException("Не удалось записать оценку в журнал: " + e.getMessage());
+        } finally {
+            walLock.readLock().unlock();
+        }
+        // чтения накладывают буфер на сводку или сбрасывают его до ответа, поэтому версия меняется сразу,
+        // а не только при сбросе: иначе ETag, взятый до сброса, подтвердил бы старый ответ
+        versions.bump(EntityVersions.Type.FILM, filmId);
+        // буфер не растет бесконечно, если БД не успевает: пишущий сам сбрасывает накопленное
+        if (pending.get() > maxPending) {
+            flush();
+        }
+    }
+
+    // сводка фильма из БД с наложенными несохраненными оценками
+    public FilmRating rating(Long filmId) {
+        Map<Long, Integer> marks = shard(filmId).get(filmId);
+        if (marks == null || marks.isEmpty()) {
+            return filmRatingStorage.findByFilmId(filmId);
+        }
+        Map<Long, Integer> overlay = new HashMap<>();
+        marks.forEach((userId, mark) -> overlay.put(userId, mark == REMOVED ? null : mark));
+        return filmRatingStorage.findByFilmId(filmId, overlay);
+    }
+
+    // несохраненные оценки пользователя по id фильма, null - удаление; оценки разложены по фильмам,
+    // поэтому просматриваются все шарды, но в БД ничего не сбрасывается
+    public Map<Long, Integer> marksOfUser(Long userId) {
+        Map<Long, Integer> marks = new HashMap<>();
+        for (Map<Long, Map<Long, Integer>> shard : shards) {
+            shard.forEach((filmId, filmMarks) -> {
+                Integer mark = filmMarks.get(userId);
+                if (mark != null) {
+                    marks.put(filmId, mark == REMOVED ? null : mark);
+                }
+            });
+        }
+        return marks;
+    }
+
+    public boolean hasPending(Long filmId) {
+        Map<Long, Integer> marks = shard(filmId).get(filmId);
+        return marks != null && !marks.isEmpty();
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushTimer.record(this::flushPending);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushPending() {
+        if (pending.get() == 0 && closedSegments.isEmpty()) {
+            return;
+        }
+        rotateSegment();
+        List<FilmLike> likes = new ArrayList<>();
+        List<FilmLike> removed = new ArrayList<>();
+        for (Map<Long, Map<Long, Integer>> shard : shards) {
+            shard.forEach((filmId, marks) -> marks.forEach((userId, mark) -> {
+                if (mark == REMOVED) {
+                    removed.add(new FilmLike(filmId, userId, mark));
+                } else {
+                    likes.add(new FilmLike(filmId, userId, mark));
+                }
+            }));
+        }
+        for (int from = 0; from < likes.size() || from < removed.size(); from += chunkSize) {
+            List<FilmLike> likesChunk = likes.subList(Math.min(from, likes.size()),
+                    Math.min(from + chunkSize, likes.size()));
+            List<FilmLike> removedChunk = removed.subList(Math.min(from, removed.size()),
+                    Math.min(from + chunkSize, removed.size()));
+            filmRatingStorage.saveMarks(likesChunk, removedChunk);
+            Set<Long> filmsId = new HashSet<>();
+            Set<Long> usersId = new HashSet<>();
+            Stream.concat(likesChunk.stream(), removedChunk.stream()).forEach(like -> {
+                filmsId.add(like.getFilmId());
+                usersId.add(like.getUserId());
+                // оценка убирается из буфера, только если ее не успели изменить во время сохранения;
+                // compute по фильму не дает удалить пустую карту фильма одновременно с новой оценкой в нее
+                shard(like.getFilmId()).computeIfPresent(like.getFilmId(), (id, marks) -> {
+                    if (marks.remove(like.getUserId(), like.getMark())) {
+                        pending.decrementAndGet();
+                    }
+                    return marks.isEmpty() ? null : marks;
+                });
+            });
+            filmCache.invalidateAll(filmsId);
+            // множество фильмов пользователя могло загрузиться из БД до сохранения его оценки
+            userLikesCache.invalidateAll(usersId);
+            filmQueryCache.invalidate(query -> query instanceof FilmQuery.Popular, filmsId);
+            filmsId.forEach(id -> versions.bump(EntityVersions.Type.FILM, id));
+        }
+        // все, что было в закрытых сегментах, теперь в БД или перекрыто более новыми оценками текущего сегмента
+        for (Path segment : closedSegments) {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить сегмент журнала оценок {}: {}", segment, e.getMessage());
+            }
+        }
+        closedSegments.clear();
+        if (!likes.isEmpty() || !removed.isEmpty()) {
+            log.debug("Сброшено оценок из буфера: {}, удалений: {}", likes.size(), removed.size());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // оценки остаются в буфере и журнале до следующей попытки
+            log.warn("Не удалось сохранить оценки из буфера: {}", e.getMessage());
+        }
+    }
+
+    private void syncQuietly() {
+        walLock.readLock().lock();
+        try {
+            wal.force(false);
+        } catch (IOException e) {
+            log.warn("Не удалось синхронизировать журнал оценок: {}", e.getMessage());
+        } finally {
+            walLock.readLock().unlock();
+        }
+    }
+
+    private void buffer(long filmId, long userId, int mark) {
+        shard(filmId).compute(filmId, (id, current) -> {
+            Map<Long, Integer> marks = current == null ? new ConcurrentHashMap<>() : current;
+            if (marks.put(userId, mark) == null) {
+                pending.incrementAndGet();
+            }
+            return marks;
+        });
+    }
+
+    private Map<Long, Map<Long, Integer>> shard(long filmId) {
+        return shards.get(Math.floorMod(Long.hashCode(filmId), shards.size()));
+    }
+
+    private void rotateSegment() {
+        walLock.writeLock().lock();
+        try {
+            wal.force(false);
+            wal.close();
+            closedSegments.add(walSegment);
+            openSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сменить сегмент журнала оценок", e);
+        } finally {
+            walLock.writeLock().unlock();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        walSegment = walDir.resolve(SEGMENT_PREFIX + String.format("%019d", ++segmentSeq) + SEGMENT_SUFFIX);
+        wal = FileChannel.open(walSegment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    // сегменты проигрываются по порядку, недописанная последняя запись (обрыв при падении) отбрасывается
+    private void recover() throws IOException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(walDir)) {
+            segments = files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .toList();
+        }
+        long records = 0;
+        for (Path segment : segments) {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(segment));
+            while (bytes.remaining() >= RECORD_SIZE) {
+                buffer(bytes.getLong(), bytes.getLong(), bytes.getInt());
+                records++;
+            }
+            String name = segment.getFileName().toString();
+            segmentSeq = Math.max(segmentSeq, Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length())));
+        }
+        if (!segments.isEmpty()) {
+            log.info("Из журнала оценок восстановлено {} записей, несохраненных оценок {}", records, pending.get());
+            closedSegments.addAll(segments);
+        }
+    }
+}
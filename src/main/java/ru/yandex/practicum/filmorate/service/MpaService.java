@@ -11,12 +11,13 @@ import java.util.Collection;
 @RequiredArgsConstructor
 public class MpaService {
     private final MpaDbStorage storage;
+    private final RequestCoalescer coalescer;
 
     public Collection<Mpa> findAll() {
-        return storage.findAll();
+        return coalescer.execute("mpas-all", storage::findAll);
     }
 
     public Mpa findById(int id) {
-        return storage.findById(id);
+        return coalescer.execute("mpa-by-id", () -> storage.findById(id), id);
     }
 }
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Объединяет одинаковые одновременные чтения: первый вызов с данным ключом выполняет запрос,
+// остальные, пришедшие до его завершения, получают тот же результат (или то же исключение).
+// Результат ничем не кэшируется - следующий вызов после завершения снова идет в БД.
+@Component
+public class RequestCoalescer {
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter> executed = new ConcurrentHashMap<>();
+    private final Map<String, Counter> coalesced = new ConcurrentHashMap<>();
+    private final CoalescingProperties properties;
+    private final MeterRegistry registry;
+
+    public RequestCoalescer(CoalescingProperties properties, ObjectProvider<MeterRegistry> registryProvider) {
+        this.properties = properties;
+        this.registry = registryProvider.getIfAvailable(SimpleMeterRegistry::new);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String method, Supplier<T> action, Object... args) {
+        // внутри транзакции результат может зависеть от ее незафиксированных изменений
+        if (!properties.isEnabled(method) || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get();
+        }
+        Key key = new Key(method, Arrays.asList(args));
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            counter(coalesced, method, "coalesced").increment();
+            return (T) await(running);
+        }
+        counter(executed, method, "executed").increment();
+        try {
+            T result = action.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private Object await(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Counter counter(Map<String, Counter> counters, String method, String result) {
+        return counters.computeIfAbsent(method, name -> Counter.builder("filmorate.coalescing.calls")
+                .description("Число чтений, выполненных самостоятельно или присоединившихся к уже выполняемому")
+                .tag("method", name)
+                .tag("result", result)
+                .register(registry));
+    }
+
+    private record Key(String method, List<Object> args) {
+    }
+}
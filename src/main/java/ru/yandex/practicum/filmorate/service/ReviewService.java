@@ -21,6 +21,7 @@ public class ReviewService {
     private final FilmStorage filmStorage;
     private final UserFeedStorage userFeedStorage;
     private final UsabilityStateStorage usabilityStateStorage;
+    private final RequestCoalescer coalescer;
 
 
     private static final String NOT_FOUND_REVIEW_MESSAGE = "Ревью с таким id не существует.";
@@ -83,17 +84,18 @@ public class ReviewService {
     public Review getReview(Long reviewId) {
         if (!reviewStorage.isReviewExists(reviewId))
             throw new NotFoundException(NOT_FOUND_REVIEW_MESSAGE);
-        return reviewStorage.getReview(reviewId).orElse(null);
+        return coalescer.execute("review-by-id", () -> reviewStorage.getReview(reviewId).orElse(null), reviewId);
     }
 
     public List<Review> getReviews(Long filmId, Integer count) {
         if (count == null || count <= 0) count = 10;
+        int limit = count;
         if (filmId != null) {
             if (!filmStorage.isFilmExists(filmId))
                 throw new NotFoundException(NOT_FOUND_FILM_MESSAGE);
-            return reviewStorage.getReviewsForFilm(filmId, count);
+            return coalescer.execute("reviews-of-film", () -> reviewStorage.getReviewsForFilm(filmId, limit), filmId, limit);
         }
-        return reviewStorage.getNReviewsForEachFilm(count);
+        return coalescer.execute("reviews", () -> reviewStorage.getNReviewsForEachFilm(limit), limit);
     }
 
     public Review likeReview(Long reviewId, Long userId) {
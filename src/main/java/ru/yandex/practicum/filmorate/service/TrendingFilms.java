@@ -0,0 +1,296 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// Набирающие популярность фильмы: число оценок за скользящее окно.
+// Оценки раскладываются по минутным корзинам - кольцу длиной в наибольшее окно, в корзине пользователи,
+// оценившие фильм в эту минуту. Для каждого окна из filmorate.films.trending.windows ведутся суммы по фильмам:
+// оценка прибавляется сразу, а корзина, вышедшая за границу окна, вычитается при смене минуты.
+// Пользователь учитывается не больше одного раза - по времени последней оценки, как и строка в "likes":
+// повторная оценка переносит голос в новую минуту, удаление оценки вычитает его.
+// Запрос выбирает count лучших из сумм кучей размера count и не обращается к "likes".
+// С затуханием оценка теряет половину веса за half-life. Веса считаются от общей точки отсчета,
+// поэтому с ходом времени суммы не пересчитываются: у всех фильмов они делятся на одно и то же число.
+// При старте корзины восстанавливаются по времени оценок из "likes"; оценки без времени (поставленные до
+// появления колонки или импортированные) в окна не попадают.
+@Slf4j
+@Component
+public class TrendingFilms {
+    // показатель степени веса не выходит за пределы double: точка отсчета сдвигается раньше
+    private static final double MAX_EXPONENT = 400;
+
+    private final FilmLikeStorage filmLikeStorage;
+    private final List<Duration> windows;
+    private final long[] windowMinutes;
+    private final double halfLifeMinutes;
+    private final Bucket[] ring;
+    private final List<Map<Long, Score>> scores;
+    // минута, в которой учтен голос пользователя за фильм
+    private final Map<Vote, Long> recorded = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private long currentMinute;
+    private long originMinute;
+
+    public TrendingFilms(FilmLikeStorage filmLikeStorage,
+                         @Value("${filmorate.films.trending.windows:1h,24h}") List<Duration> windows,
+                         @Value("${filmorate.films.trending.half-life:1h}") Duration halfLife) {
+        this.filmLikeStorage = filmLikeStorage;
+        this.windows = windows.stream().distinct().sorted().toList();
+        this.windowMinutes = this.windows.stream().mapToLong(Duration::toMinutes).toArray();
+        if (windowMinutes.length == 0 || windowMinutes[0] <= 0) {
+            throw new IllegalArgumentException("Окна набирающих популярность фильмов должны быть не короче минуты");
+        }
+        this.halfLifeMinutes = halfLife.toSeconds() / 60.0;
+        if (windowMinutes[windowMinutes.length - 1] / halfLifeMinutes > MAX_EXPONENT) {
+            throw new IllegalArgumentException("Период затухания " + halfLife + " слишком мал для окна "
+                    + this.windows.getLast());
+        }
+        this.ring = Stream.generate(Bucket::new)
+                .limit(windowMinutes[windowMinutes.length - 1])
+                .toArray(Bucket[]::new);
+        this.scores = Stream.<Map<Long, Score>>generate(HashMap::new)
+                .limit(windowMinutes.length)
+                .toList();
+        this.currentMinute = minuteOf(Instant.now());
+        this.originMinute = currentMinute;
+    }
+
+    @PostConstruct
+    public void start() {
+        Instant now = Instant.now();
+        AtomicLong restored = new AtomicLong();
+        filmLikeStorage.findLikeTimesSince(now.minus(windows.getLast()), (filmId, userId, at) -> {
+            record(filmId, userId, at);
+            restored.incrementAndGet();
+        });
+        log.info("Счетчики набирающих популярность фильмов восстановлены: оценок = {}, окна {}",
+                restored.get(), windows);
+    }
+
+    public void record(Long filmId, Long userId, Instant at) {
+        long minute = minuteOf(at);
+        lock.lock();
+        try {
+            advance(minute);
+            unrecord(filmId, userId);
+            if (minute <= currentMinute - ring.length) {
+                return;
+            }
+            Bucket bucket = ring[slot(minute)];
+            if (bucket.minute != minute) {
+                reset(bucket, minute);
+            }
+            bucket.votes.computeIfAbsent(filmId, id -> new HashSet<>()).add(userId);
+            recorded.put(new Vote(filmId, userId), minute);
+            double weight = weight(minute);
+            for (int i = 0; i < windowMinutes.length; i++) {
+                if (minute > currentMinute - windowMinutes[i]) {
+                    scores.get(i).computeIfAbsent(filmId, id -> new Score()).add(1, weight);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // удаление оценки пользователя
+    public void remove(Long filmId, Long userId) {
+        lock.lock();
+        try {
+            unrecord(filmId, userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // удаление фильма
+    public void remove(Long filmId) {
+        lock.lock();
+        try {
+            scores.forEach(score -> score.remove(filmId));
+            for (Bucket bucket : ring) {
+                Set<Long> users = bucket.votes.remove(filmId);
+                if (users != null) {
+                    users.forEach(userId -> recorded.remove(new Vote(filmId, userId)));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // удаление пользователя вместе с его оценками
+    public void removeUser(Long userId) {
+        lock.lock();
+        try {
+            recorded.keySet().stream()
+                    .filter(vote -> vote.userId().equals(userId))
+                    .toList()
+                    .forEach(vote -> unrecord(vote.filmId(), userId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // id фильмов по убыванию числа (или веса) оценок за окно, при равенстве - по возрастанию id
+    public List<Long> top(Duration window, int count, boolean decay) {
+        int index = windows.indexOf(window);
+        if (index < 0) {
+            throw new ValidationException("Окно " + window + " не поддерживается, доступны: " + windows);
+        }
+        Comparator<Map.Entry<Long, Score>> byScore = decay
+                ? Comparator.comparingDouble(entry -> entry.getValue().weight)
+                : Comparator.comparingLong(entry -> entry.getValue().votes);
+        // в голове кучи худший из отобранных
+        Comparator<Map.Entry<Long, Score>> order = byScore.thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+        PriorityQueue<Map.Entry<Long, Score>> top = new PriorityQueue<>(order);
+        List<Long> films = new ArrayList<>();
+        lock.lock();
+        try {
+            advance(minuteOf(Instant.now()));
+            for (Map.Entry<Long, Score> entry : scores.get(index).entrySet()) {
+                if (top.size() < count) {
+                    top.add(entry);
+                } else if (order.compare(entry, top.peek()) > 0) {
+                    top.poll();
+                    top.add(entry);
+                }
+            }
+            while (!top.isEmpty()) {
+                films.add(top.poll().getKey());
+            }
+        } finally {
+            lock.unlock();
+        }
+        Collections.reverse(films);
+        return films;
+    }
+
+    // корзины, вышедшие за границу окна, вычитаются из его сумм; корзина новой минуты занимает место
+    // корзины, вышедшей за наибольшее окно
+    private void advance(long minute) {
+        if (minute <= currentMinute) {
+            return;
+        }
+        if (minute - currentMinute >= ring.length) {
+            for (Bucket bucket : ring) {
+                bucket.minute = -1;
+                bucket.votes.clear();
+            }
+            scores.forEach(Map::clear);
+            recorded.clear();
+        } else {
+            for (long m = currentMinute + 1; m <= minute; m++) {
+                for (int i = 0; i < windowMinutes.length; i++) {
+                    Bucket expired = ring[slot(m - windowMinutes[i])];
+                    if (expired.minute == m - windowMinutes[i]) {
+                        subtract(scores.get(i), expired);
+                    }
+                }
+                reset(ring[slot(m)], m);
+            }
+        }
+        currentMinute = minute;
+        if ((currentMinute - originMinute) / halfLifeMinutes > 2 * MAX_EXPONENT) {
+            rebase(currentMinute - ring.length);
+        }
+    }
+
+    private void subtract(Map<Long, Score> score, Bucket bucket) {
+        double weight = weight(bucket.minute);
+        bucket.votes.forEach((filmId, users) -> subtract(score, filmId, users.size(), weight));
+    }
+
+    private void subtract(Map<Long, Score> score, Long filmId, int votes, double weight) {
+        Score filmScore = score.get(filmId);
+        if (filmScore != null && filmScore.add(-votes, weight) <= 0) {
+            score.remove(filmId);
+        }
+    }
+
+    // прежний голос пользователя вычитается из окон, в которых он еще учтен
+    private void unrecord(Long filmId, Long userId) {
+        Long minute = recorded.remove(new Vote(filmId, userId));
+        if (minute == null) {
+            return;
+        }
+        Bucket bucket = ring[slot(minute)];
+        Set<Long> users = bucket.votes.get(filmId);
+        if (users != null) {
+            users.remove(userId);
+            if (users.isEmpty()) {
+                bucket.votes.remove(filmId);
+            }
+        }
+        double weight = weight(minute);
+        for (int i = 0; i < windowMinutes.length; i++) {
+            if (minute > currentMinute - windowMinutes[i]) {
+                subtract(scores.get(i), filmId, 1, weight);
+            }
+        }
+    }
+
+    // корзина, вышедшая за наибольшее окно, больше не учитывается ни в одном окне
+    private void reset(Bucket bucket, long minute) {
+        bucket.votes.forEach((filmId, users) -> users.forEach(userId -> recorded.remove(new Vote(filmId, userId))));
+        bucket.votes.clear();
+        bucket.minute = minute;
+    }
+
+    private void rebase(long origin) {
+        double factor = 1 / weight(origin);
+        scores.forEach(score -> score.values().forEach(filmScore -> filmScore.weight *= factor));
+        originMinute = origin;
+    }
+
+    private double weight(long minute) {
+        return Math.pow(2, (minute - originMinute) / halfLifeMinutes);
+    }
+
+    private int slot(long minute) {
+        return (int) Math.floorMod(minute, ring.length);
+    }
+
+    private static long minuteOf(Instant at) {
+        return Math.floorDiv(at.getEpochSecond(), 60);
+    }
+
+    private record Vote(Long filmId, Long userId) {
+    }
+
+    private static final class Bucket {
+        private long minute = -1;
+        private final Map<Long, Set<Long>> votes = new HashMap<>();
+    }
+
+    private static final class Score {
+        private long votes;
+        private double weight;
+
+        private long add(int votes, double weight) {
+            this.votes += votes;
+            this.weight += votes * weight;
+            return this.votes;
+        }
+    }
+}
@@ -2,12 +2,19 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.cache.FilmQuery;
+import ru.yandex.practicum.filmorate.cache.FilmQueryCache;
+import ru.yandex.practicum.filmorate.cache.UserLikesCache;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.OperationType;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.UserFeed;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmRatingStorage;
 import ru.yandex.practicum.filmorate.storage.UserFeedStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
@@ -21,13 +28,21 @@ public class UserService {
 
     private final UserStorage userStorage;
     private final UserFeedStorage userFeedStorage;
+    private final FilmLikeStorage filmLikeStorage;
+    private final FilmRatingStorage filmRatingStorage;
+    private final FilmCache filmCache;
+    private final FilmQueryCache filmQueryCache;
+    private final UserLikesCache userLikesCache;
+    private final TrendingFilms trendingFilms;
+    private final EntityVersions versions;
+    private final RequestCoalescer coalescer;
 
     public Collection<User> findAll() {
-        return userStorage.findAll();
+        return coalescer.execute("users-all", userStorage::findAll);
     }
 
     public User findById(Long id) {
-        return userStorage.findById(id);
+        return coalescer.execute("user-by-id", () -> userStorage.findById(id), id);
     }
 
     public User create(User user) {
@@ -39,7 +54,18 @@ public class UserService {
     }
 
     public void delete(Long id) {
+        // лайки пользователя удаляются каскадно, сводку оценок этих фильмов нужно пересчитать
+        Collection<Long> likedFilmsId = filmLikeStorage.findFilmsIdOfUser(id);
         userStorage.delete(id);
+        filmRatingStorage.recalculate(likedFilmsId);
+        filmCache.invalidateAll(likedFilmsId);
+        userLikesCache.invalidate(id);
+        trendingFilms.removeUser(id);
+        if (!likedFilmsId.isEmpty()) {
+            filmQueryCache.invalidate(query -> query instanceof FilmQuery.Popular, likedFilmsId);
+        }
+        // оценки пользователя удалены вместе с ним
+        versions.bumpAll(EntityVersions.Type.FILM);
     }
 
     public User addToFriends(Long id, Long friendId) {
@@ -77,16 +103,16 @@ public class UserService {
     }
 
     public Collection<User> findAllFriends(Long id) {
-        return userStorage.findAllFriends(id);
+        return coalescer.execute("user-friends", () -> userStorage.findAllFriends(id), id);
     }
 
     public Collection<User> findCommonFriends(Long id, Long otherId) {
-        return userStorage.findCommonFriends(id, otherId);
+        return coalescer.execute("user-common-friends", () -> userStorage.findCommonFriends(id, otherId), id, otherId);
     }
 
     public Collection<UserFeed> findUserFeeds(Long id) {
         if (!userStorage.isUserExists(id))
             throw new NotFoundException("Пользователь с id = " + id + " не найден");
-        return userFeedStorage.findUserFeeds(id);
+        return coalescer.execute("user-feed", () -> userFeedStorage.findUserFeeds(id), id);
     }
 }
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -12,41 +13,70 @@ import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RequiredArgsConstructor
 public class BaseDbStorage<T> {
     protected final JdbcTemplate jdbc;
     protected final RowMapper<T> mapper;
+    protected JdbcConcurrencyGate gate = JdbcConcurrencyGate.UNBOUNDED;
+    protected EntityVersions versions = new EntityVersions();
+
+    @Autowired(required = false)
+    public void setGate(JdbcConcurrencyGate gate) {
+        this.gate = gate;
+    }
+
+    @Autowired(required = false)
+    public void setVersions(EntityVersions versions) {
+        this.versions = versions;
+    }
 
     protected Optional<T> findOne(String query, Object... params) {
-        try {
-            T result = jdbc.queryForObject(query, mapper, params);
-            return Optional.ofNullable(result);
-        } catch (EmptyResultDataAccessException ignored) {
-            return Optional.empty();
-        }
+        return findOne(mapper, query, params);
+    }
+
+    protected Optional<T> findOne(RowMapper<T> rowMapper, String query, Object... params) {
+        return gate.call(() -> {
+            try {
+                T result = jdbc.queryForObject(query, rowMapper, params);
+                return Optional.ofNullable(result);
+            } catch (EmptyResultDataAccessException ignored) {
+                return Optional.empty();
+            }
+        });
     }
 
     protected List<T> findMany(String query, Object... params) {
-        return jdbc.query(query, mapper, params);
+        return findMany(mapper, query, params);
+    }
+
+    protected List<T> findMany(RowMapper<T> rowMapper, String query, Object... params) {
+        return gate.call(() -> jdbc.query(query, rowMapper, params));
     }
 
     protected boolean delete(String query, Object... params) {
-        int rowsDeleted = jdbc.update(query, params);
+        int rowsDeleted = gate.call(() -> jdbc.update(query, params));
         return rowsDeleted > 0;
     }
 
     protected void update(String query, Object... params) {
-        int rowsUpdated = jdbc.update(query, params);
+        int rowsUpdated = gate.call(() -> jdbc.update(query, params));
         if (rowsUpdated == 0) {
             throw new InternalServerException("Не удалось обновить данные");
         }
     }
 
+    // запрос вида SELECT "version" FROM FINAL TABLE (UPDATE ...): новая версия строки или пустой результат,
+    // если строка не найдена или ее версия не совпала с ожидаемой
+    protected Optional<Long> updateVersioned(String query, Object... params) {
+        return gate.call(() -> jdbc.queryForList(query, Long.class, params)).stream().findFirst();
+    }
+
     protected long insertGetKey(String query, Object... params) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbc.update(connection -> {
+        gate.call(() -> jdbc.update(connection -> {
             PreparedStatement ps = connection
                     .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
             for (int idx = 0; idx < params.length; idx++) {
@@ -57,9 +87,11 @@ public class BaseDbStorage<T> {
                 }
             }
             return ps;
-        }, keyHolder);
+        }, keyHolder));
 
-        Long id = keyHolder.getKeyAs(Long.class);
+        // H2 возвращает среди ключей и вычисляемые колонки; идентификатор во всех таблицах объявлен первым
+        Map<String, Object> keys = keyHolder.getKeys();
+        Long id = keys == null || keys.isEmpty() ? null : ((Number) keys.values().iterator().next()).longValue();
 
         if (id != null) {
             return id;
@@ -69,7 +101,7 @@ public class BaseDbStorage<T> {
     }
 
     protected void insert(String query, Object... params) {
-        int rowsInserted = jdbc.update(query, params);
+        int rowsInserted = gate.call(() -> jdbc.update(query, params));
         if (rowsInserted == 0) {
             throw new InternalServerException("Не удалось сохранить данные");
         }
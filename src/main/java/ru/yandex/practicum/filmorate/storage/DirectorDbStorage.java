@@ -5,6 +5,7 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ConflictException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Director;
@@ -28,10 +29,16 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
             INSERT INTO "directors" ("name")
             VALUES (?);
             """;
+    // ожидаемая версия NULL - обновление без проверки версии
     private static final String DIRECTORS_UPDATE_LIKE_QUERY = """
-            UPDATE "directors"
-            SET "name" = ?
-            WHERE "director_id" = ?;
+            SELECT "version"
+            FROM FINAL TABLE (
+                UPDATE "directors"
+                SET "name" = ?,
+                    "version" = "version" + 1
+                WHERE "director_id" = ?
+                    AND "version" = COALESCE(?, "version")
+            );
             """;
     private static final String DIRECTORS_DELETE_QUERY = """
             DELETE FROM "directors"
@@ -62,6 +69,7 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
     public Director addDirector(Director director) {
         Long id = insertGetKey(DIRECTORS_ADD_LIKE_QUERY, director.getName());
         director.setId(id);
+        director.setVersion(0L);
         log.info("Режиссер {} добавлен в список с id = {}", director.getName(), director.getId());
         return director;
     }
@@ -72,7 +80,13 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
             throw new ValidationException("Id режисера должен быть указан");
         }
         if (isDirectorExists(director.getId())) {
-            update(DIRECTORS_UPDATE_LIKE_QUERY, director.getName(), director.getId());
+            director.setVersion(updateVersioned(DIRECTORS_UPDATE_LIKE_QUERY,
+                    director.getName(),
+                    director.getId(),
+                    director.getVersion()
+            ).orElseThrow(() -> new ConflictException("Режиссер с id = " + director.getId()
+                    + " изменен другим запросом, версия " + director.getVersion() + " устарела")));
+            versions.bump(EntityVersions.Type.DIRECTOR, director.getId());
             log.info("Режиссер с id = {} обновлен", director.getId());
             return director;
         } else {
@@ -84,6 +98,7 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
     public Long deleteDirector(Long id) {
         if (isDirectorExists(id)) {
             delete(DIRECTORS_DELETE_QUERY, id);
+            versions.bump(EntityVersions.Type.DIRECTOR, id);
             log.info("Режиссер с id = {} удален", id);
             return id;
         } else {
@@ -0,0 +1,108 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Счетчики версий сущностей для ETag. Хранилища увеличивают их при каждой записи, а версии фильмов -
+// сервисы после сброса кэшей фильмов: иначе читатель получил бы новый ETag со старым телом из кэша.
+// Версия отдельной сущности хранится в полосе по хэшу id: коллизия дает лишний 200 вместо 304, но не наоборот.
+// Эпоха запуска входит в ETag, чтобы после перезапуска старые ETag клиентов не совпали с обнуленными счетчиками.
+@Component
+public class EntityVersions {
+    private static final int STRIPES = 4096;
+
+    public enum Type {
+        FILM, USER, REVIEW, FEED, DIRECTOR
+    }
+
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final Map<Type, Counters> counters = new EnumMap<>(Type.class);
+
+    public EntityVersions() {
+        for (Type type : Type.values()) {
+            counters.put(type, new Counters());
+        }
+    }
+
+    public void bump(Type type, Long id) {
+        Counters typeCounters = counters.get(type);
+        typeCounters.entities.incrementAndGet(stripe(id));
+        typeCounters.all.incrementAndGet();
+    }
+
+    // для массовых изменений, когда затронутые id неизвестны
+    public void bumpAll(Type type) {
+        Counters typeCounters = counters.get(type);
+        typeCounters.generation.incrementAndGet();
+        typeCounters.all.incrementAndGet();
+    }
+
+    // ETag списка: меняется при любом изменении сущностей этого типа
+    public String etag(Type type) {
+        return "\"" + type.name().toLowerCase() + "-" + epoch + "-" + counters.get(type).all.get() + "\"";
+    }
+
+    public String etag(Type type, Long id) {
+        Counters typeCounters = counters.get(type);
+        return "\"" + type.name().toLowerCase() + "-" + id + "-" + epoch + "-" + typeCounters.generation.get()
+                + "." + typeCounters.entities.get(stripe(id)) + "\"";
+    }
+
+    // ETag сущности начинается с версии ее строки, по нему же If-Match при обновлении передает ожидаемую версию.
+    // GET и PUT отдают ETag в одном формате. Исходный ETag берется до чтения сущности:
+    // изменение между ними даст лишний 200, но не устаревший 304
+    public static String withVersion(String etag, Long version) {
+        return "\"" + version + ":" + etag.substring(1);
+    }
+
+    // тег из If-None-Match, счетчик которого совпадает с текущим ETag сущности; null, если такого нет.
+    // Счетчик меняется при каждой записи сущности, поэтому по нему 304 отдается без чтения самой сущности
+    public static String notModifiedTag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String candidate = tag.trim();
+            String strong = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            int separator = strong.indexOf(':');
+            if (separator > 0 && ("\"" + strong.substring(separator + 1)).equals(etag)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // версия строки из If-Match; null, если подходит любая версия
+    public static Long versionOf(String ifMatch) {
+        String tag = ifMatch.trim();
+        if (tag.equals("*")) {
+            return null;
+        }
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        tag = tag.replace("\"", "");
+        int separator = tag.indexOf(':');
+        try {
+            return Long.parseLong(separator < 0 ? tag : tag.substring(0, separator));
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Некорректный заголовок If-Match: " + ifMatch);
+        }
+    }
+
+    private static int stripe(Long id) {
+        return (Long.hashCode(id) & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    private static class Counters {
+        private final AtomicLong all = new AtomicLong();
+        private final AtomicLong generation = new AtomicLong();
+        private final AtomicLongArray entities = new AtomicLongArray(STRIPES);
+    }
+}
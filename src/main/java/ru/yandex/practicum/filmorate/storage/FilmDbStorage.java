@@ -1,18 +1,37 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
+import ru.yandex.practicum.filmorate.exception.ConflictException;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.mapper.FilmAggregateRowMapper;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Component
@@ -21,108 +40,129 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
 
     private static final String FILMS_FIND_ALL_QUERY = """
             SELECT *
+                /* aggregated columns */
             FROM "films" AS f
-            LEFT JOIN "mpas" AS r ON  f."mpa_id" = r."mpa_id";
+            LEFT JOIN "mpas" AS r ON  f."mpa_id" = r."mpa_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id";
             """;
     private static final String FILMS_INSERT_QUERY = """
             INSERT INTO "films" ("name" , "description" , "release_date" , "duration", "mpa_id")
                         VALUES (?, ?, ?, ?, ?);
             """;
+    // ожидаемая версия NULL - обновление без проверки версии
     private static final String FILMS_UPDATE_QUERY = """
-            UPDATE "films"
-            SET "name" = ?,
-                "description" = ?,
-                "release_date" = ?,
-                "duration" = ?,
-                "mpa_id" = ?
-            WHERE "film_id" = ?;
+            SELECT "version"
+            FROM FINAL TABLE (
+                UPDATE "films"
+                SET "name" = ?,
+                    "description" = ?,
+                    "release_date" = ?,
+                    "duration" = ?,
+                    "mpa_id" = ?,
+                    "version" = "version" + 1
+                WHERE "film_id" = ?
+                    AND "version" = COALESCE(?, "version")
+            );
             """;
     private static final String FILMS_FIND_BY_ID_QUERY = """
             SELECT *
+                /* aggregated columns */
             FROM "films" AS f
             LEFT JOIN "mpas" AS r ON  f."mpa_id" = r."mpa_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             WHERE f."film_id" = ?;
             """;
-    private static final String FILMS_ADD_LIKE_QUERY = """
-            MERGE INTO "likes" ("film_id" , "user_id", "mark")
-                        VALUES (?, ?, ?);
-            """;
-    private static final String FILMS_DELETE_LIKE_QUERY = """
-            DELETE FROM "likes"
-            WHERE "film_id" = ?
-                AND "user_id" = ?;
-            """;
     private static final String FILMS_GET_POPULAR_QUERY = """
             SELECT
                 f."film_id" AS "film_id",
+                f."version" AS "version",
                 f."name" AS "name",
                 f."description" AS "description",
                 f."release_date" AS "release_date",
                 f."duration" AS "duration",
                 r."mpa_id" AS "mpa_id",
                 r."mpa" AS "mpa",
-                AVG(l."mark") AS avg
+                fr."likes_count" AS "likes_count",
+                fr."marks_sum" AS "marks_sum",
+                fr."marks" AS "marks",
+                fr."average" AS avg
+                /* aggregated columns */
             FROM "films" AS f
-            LEFT JOIN "likes" AS l ON l."film_id" = f."film_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             LEFT JOIN "mpas" AS r ON f."mpa_id" = r."mpa_id"
             GROUP BY "film_id"
-            ORDER BY avg DESC
+            ORDER BY %s
             LIMIT ?;
             """;
-    private static final String FILMS_GET_POPULAR_QUERY_BY_GENRE = """
+    static final String FILMS_GET_POPULAR_QUERY_BY_GENRE = """
             SELECT
                 f."film_id" AS "film_id",
+                f."version" AS "version",
                 f."name" AS "name",
                 f."description" AS "description",
                 f."release_date" AS "release_date",
                 f."duration" AS "duration",
                 r."mpa_id" AS "mpa_id",
                 r."mpa" AS "mpa",
-                AVG(l."mark") AS avg
+                fr."likes_count" AS "likes_count",
+                fr."marks_sum" AS "marks_sum",
+                fr."marks" AS "marks",
+                fr."average" AS avg
+                /* aggregated columns */
             FROM "films" AS f
-            LEFT JOIN "likes" AS l ON l."film_id" = f."film_id"
+            JOIN "films_genre" AS fg ON fg."film_id" = f."film_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             LEFT JOIN "mpas" AS r ON f."mpa_id" = r."mpa_id"
-            LEFT JOIN "films_genre" AS fg ON fg."film_id" = f."film_id"
             WHERE fg."genre_id" = ?
             GROUP BY "film_id"
-            ORDER BY avg DESC
+            ORDER BY %s
             LIMIT ?;
             """;
-    private static final String FILMS_GET_POPULAR_QUERY_BY_YEAR = """
+    static final String FILMS_GET_POPULAR_QUERY_BY_YEAR = """
             SELECT
                 f."film_id" AS "film_id",
+                f."version" AS "version",
                 f."name" AS "name",
                 f."description" AS "description",
                 f."release_date" AS "release_date",
                 f."duration" AS "duration",
                 r."mpa_id" AS "mpa_id",
                 r."mpa" AS "mpa",
-                AVG(l."mark") AS avg
+                fr."likes_count" AS "likes_count",
+                fr."marks_sum" AS "marks_sum",
+                fr."marks" AS "marks",
+                fr."average" AS avg
+                /* aggregated columns */
             FROM "films" AS f
-            LEFT JOIN "likes" AS l ON l."film_id" = f."film_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             LEFT JOIN "mpas" AS r ON f."mpa_id" = r."mpa_id"
-            WHERE EXTRACT(YEAR FROM f."release_date") = ?
+            WHERE f."release_year" = ?
             GROUP BY "film_id"
-            ORDER BY avg DESC
+            ORDER BY %s
             LIMIT ?;
             """;
     private static final String FILMS_GET_POPULAR_QUERY_BY_YEAR_AND_GENRE = """
             SELECT
                 f."film_id" AS "film_id",
+                f."version" AS "version",
                 f."name" AS "name",
                 f."description" AS "description",
                 f."release_date" AS "release_date",
                 f."duration" AS "duration",
                 r."mpa_id" AS "mpa_id",
                 r."mpa" AS "mpa",
-                AVG(l."mark") AS avg
+                fr."likes_count" AS "likes_count",
+                fr."marks_sum" AS "marks_sum",
+                fr."marks" AS "marks",
+                fr."average" AS avg
+                /* aggregated columns */
             FROM "films" AS f
-            LEFT JOIN "likes" AS l ON l."film_id" = f."film_id"
+            JOIN "films_genre" AS fg ON fg."film_id" = f."film_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             LEFT JOIN "mpas" AS r ON f."mpa_id" = r."mpa_id"
-            LEFT JOIN "films_genre" AS fg ON fg."film_id" = f."film_id"
-            WHERE EXTRACT(YEAR FROM f."release_date") = ? AND fg."genre_id" = ?
+            WHERE f."release_year" = ? AND fg."genre_id" = ?
             GROUP BY "film_id"
-            ORDER BY avg DESC
+            ORDER BY %s
             LIMIT ?;
             """;
     private static final String FILMS_DELETE_FILMS_GENRE_QUERY = """
@@ -136,15 +176,20 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     private static final String FILMS_SEARCH_BY_TITLE = """
             SELECT
                 f."film_id" AS "film_id",
+                f."version" AS "version",
                 f."name" AS "name",
                 f."description" AS "description",
                 f."release_date" AS "release_date",
                 f."duration" AS "duration",
                 r."mpa_id" AS "mpa_id",
                 r."mpa" AS "mpa",
-                AVG(l."mark") AS avg
+                fr."likes_count" AS "likes_count",
+                fr."marks_sum" AS "marks_sum",
+                fr."marks" AS "marks",
+                fr."average" AS avg
+                /* aggregated columns */
             FROM "films" AS f
-            LEFT JOIN "likes" AS l ON l."film_id" = f."film_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             LEFT JOIN "mpas" AS r ON  f."mpa_id" = r."mpa_id"
             WHERE LOWER(f."name") LIKE LOWER('%' || ? || '%')
             GROUP BY f."name", f."film_id"
@@ -153,15 +198,20 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     private static final String FILMS_SEARCH_BY_DIRECTOR = """
             SELECT
                 f."film_id" AS "film_id",
+                f."version" AS "version",
                 f."name" AS "name",
                 f."description" AS "description",
                 f."release_date" AS "release_date",
                 f."duration" AS "duration",
                 r."mpa_id" AS "mpa_id",
                 r."mpa" AS "mpa",
-                AVG(l."mark") AS avg
+                fr."likes_count" AS "likes_count",
+                fr."marks_sum" AS "marks_sum",
+                fr."marks" AS "marks",
+                fr."average" AS avg
+                /* aggregated columns */
             FROM "films" AS f
-            LEFT JOIN "likes" AS l ON l."film_id" = f."film_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             LEFT JOIN "mpas" AS r ON  f."mpa_id" = r."mpa_id"
             LEFT JOIN "films_director" AS fd ON f."film_id" = fd."film_id"
             LEFT JOIN "directors" AS d ON fd."director_id" = d."director_id"
@@ -176,15 +226,20 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     private static final String FILMS_SEARCH_BY_TITLE_AND_DIRECTOR = """
             SELECT
                 f."film_id" AS "film_id",
+                f."version" AS "version",
                 f."name" AS "name",
                 f."description" AS "description",
                 f."release_date" AS "release_date",
                 f."duration" AS "duration",
                 r."mpa_id" AS "mpa_id",
                 r."mpa" AS "mpa",
-                AVG(l."mark") AS avg
+                fr."likes_count" AS "likes_count",
+                fr."marks_sum" AS "marks_sum",
+                fr."marks" AS "marks",
+                fr."average" AS avg
+                /* aggregated columns */
             FROM "films" AS f
-            LEFT JOIN "likes" AS l ON l."film_id" = f."film_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             LEFT JOIN "mpas" AS r ON  f."mpa_id" = r."mpa_id"
             LEFT JOIN "films_director" AS fd ON f."film_id" = fd."film_id"
             LEFT JOIN "directors" AS d ON fd."director_id" = d."director_id"
@@ -201,43 +256,55 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
             MERGE INTO "films_director" ("film_id", "director_id")
                 VALUES (?, ?);
             """;
-    private static final String GET_FILMS_BY_DIRECTOR_ID_SORTED_BY_DATE = """
-            SELECT * FROM "films" AS f
-            LEFT JOIN "mpas" AS r ON  f."mpa_id" = r."mpa_id"
-            LEFT JOIN "films_director" AS fd ON f."film_id" = fd."film_id"
-            WHERE fd."director_id" = ?
-            GROUP BY f."film_id"
-            ORDER BY f."release_date";
-            """;
-    private static final String GET_FILMS_BY_DIRECTOR_ID_SORTED_BY_LIKES = """
+    // фильмы режиссера находятся по индексу ("director_id", "film_id") и упорядочиваются по ключу - дате выхода
+    // или оценке из "film_ratings"; страница начинается после ключа и id последнего фильма предыдущей, без OFFSET.
+    // %1$s - ключ сортировки по возрастанию, %2$s - условие продолжения после курсора
+    private static final String GET_FILMS_BY_DIRECTOR_ID_PAGE = """
             SELECT
                 f."film_id" AS "film_id",
+                f."version" AS "version",
                 f."name" AS "name",
                 f."description" AS "description",
                 f."release_date" AS "release_date",
                 f."duration" AS "duration",
                 r."mpa_id" AS "mpa_id",
                 r."mpa" AS "mpa",
-                AVG(l."mark") AS avg
+                fr."likes_count" AS "likes_count",
+                fr."marks_sum" AS "marks_sum",
+                fr."marks" AS "marks",
+                fr."average" AS avg,
+                %1$s AS "sort_key"
+                /* aggregated columns */
             FROM "films" AS f
-            LEFT JOIN "likes" AS l ON l."film_id" = f."film_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             LEFT JOIN "mpas" AS r ON  f."mpa_id" = r."mpa_id"
-            LEFT JOIN "films_director" AS fd ON f."film_id" = fd."film_id"
-            WHERE fd."director_id" = ?
-            GROUP BY f."film_id"
-            ORDER BY avg DESC;
+            WHERE f."film_id" IN (
+                SELECT "film_id"
+                FROM "films_director"
+                WHERE "director_id" = ?
+            )%2$s
+            ORDER BY "sort_key", f."film_id"
+            LIMIT ?;
             """;
+    private static final String FILMS_AFTER_CURSOR_CONDITION = """
+             AND (%s, f."film_id") > (?, ?)""";
     private static final String GET_FILMS_RECOMMENDATIONS = """
             SELECT
                 f."film_id" AS "film_id",
+                f."version" AS "version",
                 f."name" AS "name",
                 f."description" AS "description",
                 f."release_date" AS "release_date",
                 f."duration" AS "duration",
                 r."mpa_id" AS "mpa_id",
-                r."mpa" AS "mpa"
+                r."mpa" AS "mpa",
+                fr."likes_count" AS "likes_count",
+                fr."marks_sum" AS "marks_sum",
+                fr."marks" AS "marks"
+                /* aggregated columns */
             FROM "films" f
             LEFT JOIN "mpas" AS r ON f."mpa_id" = r."mpa_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             LEFT JOIN "likes" l ON f."film_id" = l."film_id"
             WHERE l."user_id" IN (
                 SELECT "user_id"
@@ -260,45 +327,98 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
             LIMIT 1;
             """;
 
-    private static final String GET_COMMON_FILMS = """
+    // фильмы читаются по первичному ключу, порядок - по сводке оценок
+    private static final String FILMS_FIND_BY_IDS_SORTED_BY_RATING_QUERY = """
             SELECT
                 f."film_id" AS "film_id",
+                f."version" AS "version",
                 f."name" AS "name",
                 f."description" AS "description",
                 f."release_date" AS "release_date",
                 f."duration" AS "duration",
                 r."mpa_id" AS "mpa_id",
                 r."mpa" AS "mpa",
-                AVG(l."mark") AS avg
+                fr."likes_count" AS "likes_count",
+                fr."marks_sum" AS "marks_sum",
+                fr."marks" AS "marks",
+                fr."average" AS avg
+                /* aggregated columns */
             FROM "films" AS f
-            LEFT JOIN "likes" l ON f."film_id" = l."film_id"
+            LEFT JOIN "film_ratings" AS fr ON fr."film_id" = f."film_id"
             LEFT JOIN "mpas" AS r ON  f."mpa_id" = r."mpa_id"
-            WHERE f."film_id" IN (
-                SELECT l1."film_id"
-                FROM "likes" AS l1
-                LEFT JOIN "likes" AS l2 ON l1."film_id" = l2."film_id"
-                WHERE l1."user_id" = ? AND l2."user_id" = ?
-            )
-            GROUP BY f."film_id"
-            ORDER BY avg, f."film_id"
+            WHERE f."film_id" = ANY(?)
+            ORDER BY avg DESC NULLS LAST, f."film_id";
             """;
 
-    public FilmDbStorage(JdbcTemplate jdbc, RowMapper<Film> mapper) {
+    // в режиме aggregated заменяют отметку /* aggregated columns */ в конце списка колонок запроса фильмов;
+    // подзапросы коррелируют с алиасом f, который используется во всех запросах фильмов
+    private static final String AGGREGATED_COLUMNS_MARK = "/* aggregated columns */";
+    private static final String FILMS_AGGREGATED_COLUMNS = """
+            ,
+                (SELECT JSON_ARRAYAGG(JSON_ARRAY(ag."genre_id", agn."genre" NULL ON NULL) ORDER BY ag."genre_id")
+                FROM "films_genre" AS ag
+                JOIN "genres" AS agn ON ag."genre_id" = agn."genre_id"
+                WHERE ag."film_id" = f."film_id") AS "genres_json",
+                (SELECT JSON_ARRAYAGG(JSON_ARRAY(ad."director_id", adn."name" NULL ON NULL) ORDER BY ad."director_id")
+                FROM "films_director" AS ad
+                JOIN "directors" AS adn ON ad."director_id" = adn."director_id"
+                WHERE ad."film_id" = f."film_id") AS "directors_json"
+            """;
+    private static final String CURSOR_SEPARATOR = "/";
+
+    private final FilmRatingStorage filmRatingStorage;
+    private final FilmReadMode readMode;
+    private final RowMapper<Film> aggregateMapper = new FilmAggregateRowMapper(new ObjectMapper());
+    private final TransactionTemplate transactionTemplate;
+    private final FilmLocks filmLocks;
+
+    public FilmDbStorage(JdbcTemplate jdbc,
+                         RowMapper<Film> mapper,
+                         FilmRatingStorage filmRatingStorage,
+                         @Value("${filmorate.films.read-mode:fan-out}") FilmReadMode readMode,
+                         PlatformTransactionManager transactionManager,
+                         FilmLocks filmLocks) {
         super(jdbc, mapper);
+        this.filmRatingStorage = filmRatingStorage;
+        this.readMode = readMode;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.filmLocks = filmLocks;
+        log.info("Режим чтения фильмов: {}", readMode);
+    }
+
+    @Override
+    public boolean isAggregatedRead() {
+        return readMode == FilmReadMode.AGGREGATED;
+    }
+
+    private List<Film> findFilms(String query, Object... params) {
+        if (!isAggregatedRead()) {
+            return findMany(query, params);
+        }
+        return findMany(aggregateMapper, aggregate(query), params);
+    }
+
+    private static String aggregate(String query) {
+        if (!query.contains(AGGREGATED_COLUMNS_MARK)) {
+            throw new IllegalStateException("В запросе нет места для колонок жанров и режиссеров: " + query);
+        }
+        return query.replace(AGGREGATED_COLUMNS_MARK, FILMS_AGGREGATED_COLUMNS);
     }
 
     @Override
     public Collection<Film> findAll() {
         log.info("Получение списка фильмов");
-        return findMany(FILMS_FIND_ALL_QUERY);
+        return findFilms(FILMS_FIND_ALL_QUERY);
     }
 
     @Override
     public Film findById(Long id) {
         log.info("Получение фильма с id = {}", id);
-        return findOne(
+        return findFilms(
                 FILMS_FIND_BY_ID_QUERY,
-                id).orElseThrow(() -> new NotFoundException("Фильм с id = " + id + " не найден!"));
+                id).stream()
+                .findFirst()
+                .orElseThrow(() -> new NotFoundException("Фильм с id = " + id + " не найден!"));
     }
 
     @Override
@@ -312,6 +432,8 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 film.getMpa().getId()
         );
         film.setId(id);
+        // новая строка получает версию по умолчанию
+        film.setVersion(0L);
         film.setGenres(film.getGenres().stream()
                 .distinct()
                 .sorted(Comparator.comparingInt(Genre::getId))
@@ -335,21 +457,87 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         return film;
     }
 
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        // разрешение шлюза берется до открытия транзакции и удерживается до ее завершения
+        gate.run(() -> transactionTemplate.executeWithoutResult(status -> {
+            insertFilms(films);
+            List<Object[]> genres = new ArrayList<>();
+            List<Object[]> directors = new ArrayList<>();
+            for (Film film : films) {
+                film.setGenres(film.getGenres().stream()
+                        .distinct()
+                        .sorted(Comparator.comparingInt(Genre::getId))
+                        .toList());
+                film.getGenres().forEach(genre -> genres.add(new Object[]{film.getId(), genre.getId()}));
+                film.getDirectors().forEach(director -> directors.add(new Object[]{film.getId(), director.getId()}));
+            }
+            jdbc.batchUpdate(FILMS_INSERT_FILMS_GENRE_QUERY, genres);
+            jdbc.batchUpdate(FILMS_INSERT_FILMS_DIRECTORS_QUERY, directors);
+        }));
+        log.info("Добавлено {} фильмов пакетом, id с {} по {}", films.size(), films.getFirst().getId(),
+                films.getLast().getId());
+        return films;
+    }
+
+    private void insertFilms(List<Film> films) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.batchUpdate(
+                connection -> connection.prepareStatement(FILMS_INSERT_QUERY, new String[]{"film_id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Film film = films.get(i);
+                        ps.setString(1, film.getName());
+                        ps.setString(2, film.getDescription());
+                        ps.setObject(3, film.getReleaseDate());
+                        ps.setObject(4, film.getDuration());
+                        ps.setInt(5, film.getMpa().getId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                },
+                keyHolder);
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != films.size()) {
+            throw new InternalServerException("Не удалось сохранить фильмы: получено " + keys.size()
+                    + " идентификаторов вместо " + films.size());
+        }
+        for (int i = 0; i < films.size(); i++) {
+            films.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+            films.get(i).setVersion(0L);
+        }
+    }
+
+    // связи с жанрами и режиссерами пересоздаются, поэтому обновление идет одной транзакцией
+    // под блокировкой фильма: параллельные обновления ждут в очереди, не занимая соединение из пула,
+    // а затем либо применяются целиком, либо не проходят проверку версии
     @Override
     public Film update(Film film) {
         if (film.getId() == null) {
             throw new ConditionsNotMetException("Id фильма должен быть указан");
         }
-        if (isFilmExists(film.getId())) {
-            update(
+        filmLocks.run(film.getId(), () -> gate.run(() -> transactionTemplate.executeWithoutResult(status -> {
+            if (!isFilmExists(film.getId())) {
+                throw new NotFoundException("Фильм с id = " + film.getId() + " не найден");
+            }
+            film.setVersion(updateVersioned(
                     FILMS_UPDATE_QUERY,
                     film.getName(),
                     film.getDescription(),
                     Date.valueOf(film.getReleaseDate()),
                     film.getDuration(),
                     film.getMpa().getId(),
-                    film.getId()
-            );
+                    film.getId(),
+                    film.getVersion()
+            ).orElseThrow(() -> new ConflictException("Фильм с id = " + film.getId()
+                    + " изменен другим запросом, версия " + film.getVersion() + " устарела")));
             delete(
                     FILMS_DELETE_FILMS_GENRE_QUERY,
                     film.getId()
@@ -376,113 +564,143 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                         director.getId()
                 );
             }
-            log.info("Фильм с id = {} обновлен", film.getId());
-            return film;
-        }
-        throw new NotFoundException("Фильм с id = " + film.getId() + " не найден");
+        })));
+        log.info("Фильм с id = {} обновлен, версия {}", film.getId(), film.getVersion());
+        return film;
     }
 
     // удаление фильма по id, модифицировал связи в schema, при удалении фильма удаляются зависимые записи по id
     @Override
     public void delete(Long id) {
-        if (!isFilmExists(id))
-            throw new NotFoundException("Фильм с id = " + id + " не найден");
-        delete(FILMS_DELETE, id);
+        filmLocks.run(id, () -> {
+            if (!isFilmExists(id))
+                throw new NotFoundException("Фильм с id = " + id + " не найден");
+            delete(FILMS_DELETE, id);
+        });
+        // вместе с фильмом удалены его отзывы
+        versions.bumpAll(EntityVersions.Type.REVIEW);
         log.info("Фильм с id = {} удален", id);
     }
 
     @Override
-    public Film addLike(Long id, Long userId, Integer mark) {
-        if (!isFilmExists(id))
-            throw new NotFoundException("Фильм с id = " + id + " не найден");
-        Film film = findOne(
-                FILMS_FIND_BY_ID_QUERY,
-                id
-        ).orElse(null);
-        insert(
-                FILMS_ADD_LIKE_QUERY,
-                id,
-                userId,
-                mark
-        );
-        film.addLike(new FilmLike(id, userId, mark));
-
-        log.info("Пользователь с id = {} поставил лайк фильму id = {}", userId, id);
-        return film;
+    public FilmRating addLike(Long id, Long userId, Integer mark) {
+        return filmRatingStorage.addMark(id, userId, mark);
     }
 
     @Override
-    public Film deleteLike(Long id, Long userId) {
-        if (!isFilmExists(id))
-            throw new NotFoundException("Фильм с id = " + id + " не найден");
-        Film film = findOne(
-                FILMS_FIND_BY_ID_QUERY,
-                id
-        ).orElse(null);
-        delete(
-                FILMS_DELETE_LIKE_QUERY,
-                id,
-                userId
-        );
-        film.deleteLike(new FilmLike(id, userId, 0));
-        log.info("Пользователь с id = {} удалил лайк фильму id = {}", userId, id);
-        return film;
+    public FilmRating deleteLike(Long id, Long userId) {
+        return filmRatingStorage.removeMark(id, userId);
+    }
+
+    // фильмы без оценок - в конце, при равной оценке - по id
+    static String orderBy(RankType rank) {
+        return switch (rank) {
+            case AVG -> "avg DESC NULLS LAST, f.\"film_id\"";
+            case BAYES -> "fr.\"bayes_score\" DESC NULLS LAST, f.\"film_id\"";
+            case WILSON -> "fr.\"wilson_score\" DESC NULLS LAST, f.\"film_id\"";
+        };
     }
 
     @Override
-    public Collection<Film> getPopular(Long count, Long genreId, int year) {
+    public Collection<Film> getPopular(Long count, Long genreId, int year, RankType rank) {
         if (count <= 0) throw new ValidationException("Параметр count должен быть больше 0");
-        log.info("Получение списка {} популярных фильмов", count);
+        log.info("Получение списка {} популярных фильмов, ранжирование {}", count, rank);
         Collection<Film> films = null;
 
         //если ищем по avg и year
         if (genreId == 0L && year >= 1) {
-            films = findMany(
-                    FILMS_GET_POPULAR_QUERY_BY_YEAR,
+            films = findFilms(
+                    FILMS_GET_POPULAR_QUERY_BY_YEAR.formatted(orderBy(rank)),
                     year, count);
         }
         //если ищем по avg и genre
         if (genreId >= 1L && year == 0) {
-            films = findMany(
-                    FILMS_GET_POPULAR_QUERY_BY_GENRE,
+            films = findFilms(
+                    FILMS_GET_POPULAR_QUERY_BY_GENRE.formatted(orderBy(rank)),
                     genreId, count);
         }
         //если ищем по avg, genre и year
         if (genreId >= 1L && year >= 1) {
-            films = findMany(
-                    FILMS_GET_POPULAR_QUERY_BY_YEAR_AND_GENRE,
+            films = findFilms(
+                    FILMS_GET_POPULAR_QUERY_BY_YEAR_AND_GENRE.formatted(orderBy(rank)),
                     year, genreId, count);
         }
         //только avg
         if (films == null) {
-            films = findMany(
-                    FILMS_GET_POPULAR_QUERY,
+            films = findFilms(
+                    FILMS_GET_POPULAR_QUERY.formatted(orderBy(rank)),
                     count);
         }
         return films;
     }
 
-    @Override
-    public Collection<Film> getFilmsByDirector(Long id, String sortBy) { // получаем sorted film list по likes или date
-        switch (sortBy) {
-            case "year" -> {
-                return findMany(GET_FILMS_BY_DIRECTOR_ID_SORTED_BY_DATE, id);
-            }
-            case "likes" -> {
-                return findMany(GET_FILMS_BY_DIRECTOR_ID_SORTED_BY_LIKES, id);
-            }
+    // запрос страницы фильмов режиссера: year - по дате выхода, likes - по оценке rank от лучших
+    // (ключ - оценка с обратным знаком, чтобы курсор сравнивался одним условием); фильмы без оценок последние
+    static String filmsByDirectorQuery(String sortBy, RankType rank, boolean afterCursor) {
+        String key = switch (sortBy) {
+            case "year" -> "f.\"release_date\"";
+            case "likes" -> switch (rank) {
+                case AVG -> "-COALESCE(fr.\"average\", -1)";
+                case BAYES -> "-COALESCE(fr.\"bayes_score\", -1)";
+                case WILSON -> "-COALESCE(fr.\"wilson_score\", -1)";
+            };
             default -> throw new NotFoundException("Данный вид сортировки " + sortBy + " не найден");
+        };
+        return GET_FILMS_BY_DIRECTOR_ID_PAGE.formatted(key,
+                afterCursor ? FILMS_AFTER_CURSOR_CONDITION.formatted(key) : "");
+    }
+
+    @Override
+    public FilmPage getFilmsByDirector(Long id, String sortBy, RankType rank, String cursor, int size) {
+        String query = filmsByDirectorQuery(sortBy, rank, cursor != null);
+        boolean byYear = sortBy.equals("year");
+        List<Object> params = new ArrayList<>(List.of(id));
+        if (cursor != null) {
+            params.addAll(cursorParams(cursor, byYear));
+        }
+        // на одну запись больше страницы: по ней видно, есть ли следующая
+        params.add(size + 1);
+        List<Object> keys = new ArrayList<>();
+        RowMapper<Film> rowMapper = isAggregatedRead() ? aggregateMapper : mapper;
+        List<Film> films = findMany((rs, rowNum) -> {
+            keys.add(byYear ? rs.getObject("sort_key", LocalDate.class) : rs.getDouble("sort_key"));
+            return rowMapper.mapRow(rs, rowNum);
+        }, isAggregatedRead() ? aggregate(query) : query, params.toArray());
+        if (films.size() <= size) {
+            return new FilmPage(films, null);
+        }
+        Film last = films.get(size - 1);
+        return new FilmPage(new ArrayList<>(films.subList(0, size)),
+                encodeCursor(keys.get(size - 1) + CURSOR_SEPARATOR + last.getId()));
+    }
+
+    private static String encodeCursor(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // курсор - base64 от "ключ/id" последнего фильма страницы
+    private static List<Object> cursorParams(String cursor, boolean byYear) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split(CURSOR_SEPARATOR);
+            Object key = byYear ? LocalDate.parse(position[0]) : Double.valueOf(position[0]);
+            return List.of(key, Long.valueOf(position[1]));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new ValidationException("Некорректный курсор " + cursor);
         }
     }
 
     @Override
     public Collection<Film> getRecommendedFilmsForUser(Long id) {
-        return findMany(GET_FILMS_RECOMMENDATIONS, id, id, id);
+        return findFilms(GET_FILMS_RECOMMENDATIONS, id, id, id);
     }
 
     @Override
-    public Collection<Film> getCommonFilms(Long userId, Long friendId) {
-        return findMany(GET_COMMON_FILMS, userId, friendId);
+    public Collection<Film> findByIdsSortedByRating(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return findFilms(FILMS_FIND_BY_IDS_SORTED_BY_RATING_QUERY, (Object) ids.toArray(Long[]::new));
     }
 
     @Override
@@ -496,13 +714,13 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         log.info("Получение фильмов по значению = {}", query);
         switch (searchType) {
             case TITLE_AND_DIRECTOR -> {
-                return findMany(FILMS_SEARCH_BY_TITLE_AND_DIRECTOR, query, query);
+                return findFilms(FILMS_SEARCH_BY_TITLE_AND_DIRECTOR, query, query);
             }
             case DIRECTOR -> {
-                return findMany(FILMS_SEARCH_BY_DIRECTOR, query);
+                return findFilms(FILMS_SEARCH_BY_DIRECTOR, query);
             }
             default -> {
-                return findMany(FILMS_SEARCH_BY_TITLE, query);
+                return findFilms(FILMS_SEARCH_BY_TITLE, query);
             }
         }
     }
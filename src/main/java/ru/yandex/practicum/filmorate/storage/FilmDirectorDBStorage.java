@@ -23,6 +23,11 @@ public class FilmDirectorDBStorage extends BaseDbStorage<FilmDirector> implement
             WHERE "film_id" IN (%s)
             ORDER BY fd."film_id";
             """;
+    private static final String FILMS_ID_FIND_BY_DIRECTOR_ID_QUERY = """
+            SELECT "film_id"
+            FROM "films_director"
+            WHERE "director_id" = ?;
+            """;
 
     public FilmDirectorDBStorage(JdbcTemplate jdbc, RowMapper<FilmDirector> mapper) {
         super(jdbc, mapper);
@@ -34,4 +39,9 @@ public class FilmDirectorDBStorage extends BaseDbStorage<FilmDirector> implement
                 String.format(DIRECTORS_FIND_BY_FILM_ID_QUERY, filmsId)
         );
     }
+
+    @Override
+    public Collection<Long> findFilmsIdOfDirector(Long directorId) {
+        return gate.call(() -> jdbc.queryForList(FILMS_ID_FIND_BY_DIRECTOR_ID_QUERY, Long.class, directorId));
+    }
 }
@@ -6,4 +6,6 @@ import java.util.Collection;
 
 public interface FilmDirectorStorage {
     Collection<FilmDirector> findDirectorsOfFilms(String filmsId);
+
+    Collection<Long> findFilmsIdOfDirector(Long directorId);
 }
@@ -3,21 +3,60 @@ package ru.yandex.practicum.filmorate.storage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.UserLike;
+import ru.yandex.practicum.filmorate.model.UserLikePage;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 @Primary
 public class FilmLikeDbStorage extends BaseDbStorage<FilmLike> implements FilmLikeStorage {
+    // порядок первичного ключа ("film_id", "user_id") позволяет читать страницу по индексу без сортировки
     private static final String LIKES_FIND_BY_FILM_ID_QUERY = """
             SELECT *
             FROM "likes"
-            WHERE "film_id" IN (%s)
-            ORDER BY "mark" DESC, "user_id";
+            WHERE "film_id" = ?
+            ORDER BY "user_id"
+            LIMIT ? OFFSET ?;
+            """;
+    static final String LIKES_FIND_FILMS_ID_BY_USER_ID_QUERY = """
+            SELECT "film_id"
+            FROM "likes"
+            WHERE "user_id" = ?;
+            """;
+
+    // страница после курсора читается по индексу ("user_id", "film_id", "mark") без обращения к таблице
+    static final String LIKES_FIND_BY_USER_ID_AFTER_QUERY = """
+            SELECT "film_id", "mark"
+            FROM "likes"
+            WHERE "user_id" = ? AND "film_id" > ?
+            ORDER BY "film_id"
+            LIMIT ?;
+            """;
+
+    // читается по индексу ("created_at", "film_id", "user_id") без обращения к таблице
+    static final String LIKES_FIND_TIMES_SINCE_QUERY = """
+            SELECT "film_id", "user_id", "created_at"
+            FROM "likes"
+            WHERE "created_at" >= ?;
             """;
 
     public FilmLikeDbStorage(JdbcTemplate jdbc, RowMapper<FilmLike> mapper) {
@@ -25,10 +64,70 @@ public class FilmLikeDbStorage extends BaseDbStorage<FilmLike> implements FilmLi
     }
 
     @Override
-    public Collection<FilmLike> findLikesOfFilms(String filmsId) {
-        log.info("Получение списка лайков для фильма с id = {}", filmsId);
+    public Collection<FilmLike> findLikesOfFilm(Long filmId, int from, int size) {
+        log.info("Получение лайков фильма с id = {}, from = {}, size = {}", filmId, from, size);
         return findMany(
-                String.format(LIKES_FIND_BY_FILM_ID_QUERY, filmsId)
+                LIKES_FIND_BY_FILM_ID_QUERY,
+                filmId,
+                size,
+                from
         );
     }
+
+    @Override
+    public Collection<Long> findFilmsIdOfUser(Long userId) {
+        return gate.call(() -> jdbc.queryForList(LIKES_FIND_FILMS_ID_BY_USER_ID_QUERY, Long.class, userId));
+    }
+
+    @Override
+    public UserLikePage findLikesOfUser(Long userId, String cursor, int size, Map<Long, Integer> marks) {
+        log.info("Получение оценок пользователя с id = {}, cursor = {}, size = {}", userId, cursor, size);
+        long after = cursor == null ? 0L : filmIdOf(cursor);
+        NavigableMap<Long, Integer> overlay = new TreeMap<>(marks).tailMap(after, false);
+        long removed = overlay.values().stream().filter(Objects::isNull).count();
+        // на одну запись больше страницы и на каждую удаляемую: по лишней видно, есть ли следующая
+        int limit = size + (int) removed + 1;
+        List<UserLike> rows = gate.call(() -> jdbc.query(LIKES_FIND_BY_USER_ID_AFTER_QUERY,
+                (rs, rowNum) -> new UserLike(rs.getLong("film_id"), rs.getInt("mark")),
+                userId, after, limit));
+        // строки - все оценки от курсора до последней прочитанной, несохраненные накладываются в этих же границах
+        NavigableMap<Long, Integer> merged = new TreeMap<>();
+        rows.forEach(like -> merged.put(like.getFilmId(), like.getMark()));
+        (rows.size() < limit ? overlay : overlay.headMap(rows.getLast().getFilmId(), true))
+                .forEach((filmId, mark) -> {
+                    if (mark == null) {
+                        merged.remove(filmId);
+                    } else {
+                        merged.put(filmId, mark);
+                    }
+                });
+        List<UserLike> likes = merged.entrySet().stream()
+                .limit(size)
+                .map(entry -> new UserLike(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (merged.size() <= size) {
+            return new UserLikePage(likes, null);
+        }
+        String next = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                likes.getLast().getFilmId().toString().getBytes(StandardCharsets.UTF_8));
+        return new UserLikePage(likes, next);
+    }
+
+    @Override
+    public void findLikeTimesSince(Instant since, LikeTimeHandler action) {
+        log.info("Получение времени оценок начиная с {}", since);
+        gate.run(() -> jdbc.query(LIKES_FIND_TIMES_SINCE_QUERY,
+                (RowCallbackHandler) rs -> action.accept(rs.getLong("film_id"), rs.getLong("user_id"),
+                        rs.getObject("created_at", OffsetDateTime.class).toInstant()),
+                OffsetDateTime.ofInstant(since, ZoneOffset.UTC)));
+    }
+
+    // курсор - base64 от id последнего фильма страницы
+    private static long filmIdOf(String cursor) {
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Некорректный курсор " + cursor);
+        }
+    }
 }
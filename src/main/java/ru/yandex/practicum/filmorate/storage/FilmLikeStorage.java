@@ -1,9 +1,24 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.UserLikePage;
 
+import java.time.Instant;
 import java.util.Collection;
+import java.util.Map;
 
 public interface FilmLikeStorage {
-    Collection<FilmLike> findLikesOfFilms(String filmsId);
+    Collection<FilmLike> findLikesOfFilm(Long filmId, int from, int size);
+
+    Collection<Long> findFilmsIdOfUser(Long userId);
+
+    // marks - несохраненные оценки пользователя по id фильма, накладываются на страницу; null - удаление
+    UserLikePage findLikesOfUser(Long userId, String cursor, int size, Map<Long, Integer> marks);
+
+    // оценки без времени не возвращаются
+    void findLikeTimesSince(Instant since, LikeTimeHandler action);
+
+    interface LikeTimeHandler {
+        void accept(Long filmId, Long userId, Instant at);
+    }
 }
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Блокировки изменений фильма, разбитые на полосы по id: изменения одного фильма выполняются по очереди,
+// разных фильмов (кроме попавших в одну полосу) - параллельно.
+// Блокировка берется до шлюза БД и транзакции, поэтому изменения одного фильма ждут здесь,
+// не занимая соединение из пула в ожидании блокировки строки в БД.
+// ReentrantLock не закрепляет виртуальный поток за потоком-носителем, в отличие от synchronized.
+@Slf4j
+@Component
+public class FilmLocks {
+    private final ReentrantLock[] stripes;
+    private final long timeoutNanos;
+    private final Timer waitTimer;
+
+    public FilmLocks(@Value("${filmorate.films.lock.stripes:1024}") int stripes,
+                     @Value("${filmorate.films.lock.timeout:${filmorate.jdbc.gate.timeout:30s}}") Duration timeout,
+                     ObjectProvider<MeterRegistry> registryProvider) {
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.timeoutNanos = timeout.toNanos();
+        this.waitTimer = Timer.builder("filmorate.films.lock.wait")
+                .description("Время ожидания блокировки изменения фильма")
+                .publishPercentileHistogram()
+                .register(registryProvider.getIfAvailable(SimpleMeterRegistry::new));
+        log.info("Изменения фильмов блокируются по {} полосам", stripes);
+    }
+
+    public <T> T call(Long filmId, Supplier<T> action) {
+        ReentrantLock lock = stripes[Math.floorMod(Long.hashCode(filmId), stripes.length)];
+        long start = System.nanoTime();
+        acquire(lock, filmId);
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void run(Long filmId, Runnable action) {
+        call(filmId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void acquire(ReentrantLock lock, Long filmId) {
+        try {
+            if (!lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new InternalServerException("Превышено время ожидания изменения фильма с id = " + filmId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("Ожидание изменения фильма с id = " + filmId + " прервано");
+        }
+    }
+}
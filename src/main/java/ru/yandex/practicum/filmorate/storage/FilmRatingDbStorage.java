@@ -0,0 +1,268 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Лайки и сводка "film_ratings" изменяются в одной транзакции под блокировкой строки фильма,
+// поэтому параллельные оценки одного фильма не теряют обновления сводки.
+// Одиночные оценки сначала ждут блокировку фильма в приложении (FilmLocks), а не в БД с занятым соединением.
+@Slf4j
+@Component
+public class FilmRatingDbStorage extends BaseDbStorage<FilmRating> implements FilmRatingStorage {
+    private static final String FILMS_LOCK_QUERY = """
+            SELECT "film_id"
+            FROM "films"
+            WHERE "film_id" = ?
+            FOR UPDATE;
+            """;
+    // блокировки берутся в порядке id, чтобы пакеты с пересекающимися фильмами не блокировали друг друга взаимно
+    private static final String FILMS_LOCK_MANY_QUERY = """
+            SELECT "film_id"
+            FROM "films"
+            WHERE "film_id" = ANY(?)
+            ORDER BY "film_id"
+            FOR UPDATE;
+            """;
+    private static final String USERS_FIND_EXISTING_QUERY = """
+            SELECT "user_id"
+            FROM "users"
+            WHERE "user_id" = ANY(?);
+            """;
+    private static final String LIKES_FIND_MARK_QUERY = """
+            SELECT "mark"
+            FROM "likes"
+            WHERE "film_id" = ?
+                AND "user_id" = ?;
+            """;
+    private static final String LIKES_FIND_MARKS_QUERY = """
+            SELECT "user_id", "mark"
+            FROM "likes"
+            WHERE "film_id" = ?
+                AND "user_id" = ANY(?);
+            """;
+    private static final String LIKES_MERGE_QUERY = """
+            MERGE INTO "likes" ("film_id" , "user_id", "mark", "created_at")
+                        VALUES (?, ?, ?, CURRENT_TIMESTAMP);
+            """;
+    // время импортированной оценки неизвестно, она не считается свежей
+    private static final String LIKES_IMPORT_MERGE_QUERY = """
+            MERGE INTO "likes" ("film_id" , "user_id", "mark", "created_at")
+                        VALUES (?, ?, ?, NULL);
+            """;
+    private static final String LIKES_DELETE_QUERY = """
+            DELETE FROM "likes"
+            WHERE "film_id" = ?
+                AND "user_id" = ?;
+            """;
+    private static final String RATINGS_FIND_BY_FILM_ID_QUERY = """
+            SELECT *
+            FROM "film_ratings"
+            WHERE "film_id" = ?;
+            """;
+    private static final String RATINGS_MERGE_QUERY = """
+            MERGE INTO "film_ratings" ("film_id", "likes_count", "marks_sum", "marks")
+                        VALUES (?, ?, ?, ?);
+            """;
+    private static final String RATINGS_RECALCULATE_QUERY = """
+            MERGE INTO "film_ratings" ("film_id", "likes_count", "marks_sum", "marks")
+            KEY ("film_id")
+            SELECT
+                f."film_id",
+                COUNT(l."mark"),
+                COALESCE(SUM(l."mark"), 0),
+                ARRAY[%s]
+            FROM "films" AS f
+            LEFT JOIN "likes" AS l ON l."film_id" = f."film_id"
+            %s
+            GROUP BY f."film_id";
+            """.formatted(IntStream.range(0, FilmRating.MARKS)
+                    .mapToObj(mark -> "COUNT(CASE WHEN l.\"mark\" = " + mark + " THEN 1 END)")
+                    .collect(Collectors.joining(", ")), "%s");
+
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate snapshotTemplate;
+    private final FilmLocks filmLocks;
+
+    public FilmRatingDbStorage(JdbcTemplate jdbc,
+                               RowMapper<FilmRating> mapper,
+                               PlatformTransactionManager transactionManager,
+                               FilmLocks filmLocks) {
+        super(jdbc, mapper);
+        this.filmLocks = filmLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTemplate.setReadOnly(true);
+    }
+
+    @Override
+    public FilmRating findByFilmId(Long filmId) {
+        return findOne(RATINGS_FIND_BY_FILM_ID_QUERY, filmId).orElseGet(FilmRating::new);
+    }
+
+    // Сводка и прежние оценки пользователей читаются из одного снимка, поэтому повторное наложение
+    // уже сохраненной оценки ничего не меняет: прежняя оценка вычитается, та же самая прибавляется.
+    @Override
+    public FilmRating findByFilmId(Long filmId, Map<Long, Integer> marks) {
+        if (marks.isEmpty()) {
+            return findByFilmId(filmId);
+        }
+        return gate.call(() -> snapshotTemplate.execute(status -> {
+            FilmRating rating = findByFilmId(filmId);
+            Map<Long, Integer> oldMarks = new HashMap<>();
+            jdbc.query(LIKES_FIND_MARKS_QUERY,
+                    rs -> {
+                        oldMarks.put(rs.getLong("user_id"), rs.getInt("mark"));
+                    },
+                    filmId, marks.keySet().toArray(Long[]::new));
+            marks.forEach((userId, mark) -> {
+                Integer oldMark = oldMarks.get(userId);
+                if (oldMark != null) {
+                    rating.removeMark(oldMark);
+                }
+                if (mark != null) {
+                    rating.addMark(mark);
+                }
+            });
+            return rating;
+        }));
+    }
+
+    @Override
+    public FilmRating addMark(Long filmId, Long userId, Integer mark) {
+        FilmRating result = filmLocks.call(filmId, () -> inTransaction(() -> {
+            FilmRating rating = lockRating(filmId);
+            Integer oldMark = findMark(filmId, userId);
+            if (oldMark != null) {
+                rating.removeMark(oldMark);
+            }
+            insert(LIKES_MERGE_QUERY, filmId, userId, mark);
+            rating.addMark(mark);
+            saveRating(filmId, rating);
+            log.info("Пользователь с id = {} поставил оценку {} фильму id = {}", userId, mark, filmId);
+            return rating;
+        }));
+        return result;
+    }
+
+    @Override
+    public FilmRating removeMark(Long filmId, Long userId) {
+        FilmRating result = filmLocks.call(filmId, () -> inTransaction(() -> {
+            FilmRating rating = lockRating(filmId);
+            Integer oldMark = findMark(filmId, userId);
+            if (oldMark == null) {
+                return rating;
+            }
+            delete(LIKES_DELETE_QUERY, filmId, userId);
+            rating.removeMark(oldMark);
+            saveRating(filmId, rating);
+            log.info("Пользователь с id = {} удалил оценку фильму id = {}", userId, filmId);
+            return rating;
+        }));
+        return result;
+    }
+
+    @Override
+    public List<FilmLike> addMarks(Collection<FilmLike> likes) {
+        return saveMarks(likes, List.of(), LIKES_IMPORT_MERGE_QUERY);
+    }
+
+    @Override
+    public List<FilmLike> saveMarks(Collection<FilmLike> likes, Collection<FilmLike> removed) {
+        return saveMarks(likes, removed, LIKES_MERGE_QUERY);
+    }
+
+    private List<FilmLike> saveMarks(Collection<FilmLike> likes, Collection<FilmLike> removed, String mergeQuery) {
+        if (likes.isEmpty() && removed.isEmpty()) {
+            return List.of();
+        }
+        List<FilmLike> saved = inTransaction(() -> {
+            Set<Long> films = new HashSet<>(jdbc.queryForList(FILMS_LOCK_MANY_QUERY, Long.class,
+                    (Object) Stream.concat(likes.stream(), removed.stream())
+                            .map(FilmLike::getFilmId)
+                            .distinct()
+                            .toArray(Long[]::new)));
+            Set<Long> users = new HashSet<>(jdbc.queryForList(USERS_FIND_EXISTING_QUERY, Long.class,
+                    (Object) likes.stream().map(FilmLike::getUserId).distinct().toArray(Long[]::new)));
+            List<FilmLike> existing = likes.stream()
+                    .filter(like -> films.contains(like.getFilmId()) && users.contains(like.getUserId()))
+                    .toList();
+            jdbc.batchUpdate(mergeQuery, existing.stream()
+                    .map(like -> new Object[]{like.getFilmId(), like.getUserId(), like.getMark()})
+                    .toList());
+            jdbc.batchUpdate(LIKES_DELETE_QUERY, removed.stream()
+                    .filter(like -> films.contains(like.getFilmId()))
+                    .map(like -> new Object[]{like.getFilmId(), like.getUserId()})
+                    .toList());
+            jdbc.update(String.format(RATINGS_RECALCULATE_QUERY, "WHERE f.\"film_id\" = ANY(?)"),
+                    (Object) films.toArray(Long[]::new));
+            return existing;
+        });
+        log.info("Сохранено {} оценок пакетом из {}, удалений {}", saved.size(), likes.size(), removed.size());
+        return saved;
+    }
+
+    @Override
+    public void recalculate(Collection<Long> filmsId) {
+        if (filmsId.isEmpty()) {
+            return;
+        }
+        String ids = filmsId.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(", "));
+        gate.run(() -> jdbc.update(String.format(RATINGS_RECALCULATE_QUERY, "WHERE f.\"film_id\" IN (" + ids + ")")));
+        log.info("Пересчитана сводка оценок фильмов с id = {}", ids);
+    }
+
+    @Override
+    public void recalculateAll() {
+        gate.run(() -> jdbc.update(String.format(RATINGS_RECALCULATE_QUERY, "")));
+        log.info("Пересчитана сводка оценок всех фильмов");
+    }
+
+    private <R> R inTransaction(Supplier<R> action) {
+        // разрешение шлюза берется до открытия транзакции и удерживается до ее завершения
+        return gate.call(() -> transactionTemplate.execute(status -> action.get()));
+    }
+
+    private FilmRating lockRating(Long filmId) {
+        List<Long> locked = jdbc.queryForList(FILMS_LOCK_QUERY, Long.class, filmId);
+        if (locked.isEmpty()) {
+            throw new NotFoundException("Фильм с id = " + filmId + " не найден");
+        }
+        return findByFilmId(filmId);
+    }
+
+    private Integer findMark(Long filmId, Long userId) {
+        List<Integer> marks = jdbc.queryForList(LIKES_FIND_MARK_QUERY, Integer.class, filmId, userId);
+        return marks.isEmpty() ? null : marks.getFirst();
+    }
+
+    private void saveRating(Long filmId, FilmRating rating) {
+        insert(RATINGS_MERGE_QUERY,
+                filmId,
+                rating.getCount(),
+                rating.getSum(),
+                Arrays.stream(rating.getHistogram()).boxed().toArray(Integer[]::new));
+    }
+}
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface FilmRatingStorage {
+    FilmRating findByFilmId(Long filmId);
+
+    // сводка с учетом еще не сохраненных оценок: marks - новая оценка пользователя или null, если оценка удалена
+    FilmRating findByFilmId(Long filmId, Map<Long, Integer> marks);
+
+    FilmRating addMark(Long filmId, Long userId, Integer mark);
+
+    FilmRating removeMark(Long filmId, Long userId);
+
+    // сохраняет импортированные оценки пакетом без времени оценки и пересчитывает сводку каждого
+    // затронутого фильма один раз; оценки несуществующих фильмов и пользователей пропускаются,
+    // возвращаются сохраненные
+    List<FilmLike> addMarks(Collection<FilmLike> likes);
+
+    // то же для отложенных оценок пользователей, со временем сохранения и удалениями
+    List<FilmLike> saveMarks(Collection<FilmLike> likes, Collection<FilmLike> removed);
+
+    void recalculate(Collection<Long> filmsId);
+
+    void recalculateAll();
+}
@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.storage;
+
+public enum FilmReadMode {
+    // основной запрос и отдельные запросы жанров, режиссеров и лайков
+    FAN_OUT,
+    // жанры, режиссеры и лайки собираются в JSON-колонки основного запроса
+    AGGREGATED
+}
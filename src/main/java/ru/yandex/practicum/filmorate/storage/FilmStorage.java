@@ -1,9 +1,13 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPage;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.model.RankType;
 import ru.yandex.practicum.filmorate.model.SearchType;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface FilmStorage {
     Collection<Film> findAll();
@@ -12,23 +16,29 @@ public interface FilmStorage {
 
     Film create(Film film);
 
+    // сохраняет фильмы одной транзакцией пакетными запросами и проставляет им id
+    List<Film> createAll(List<Film> films);
+
     Film update(Film newFilm);
 
     void delete(Long id);
 
-    Film addLike(Long id, Long userId, Integer rating);
+    FilmRating addLike(Long id, Long userId, Integer rating);
 
-    Film deleteLike(Long id, Long userId);
+    FilmRating deleteLike(Long id, Long userId);
 
     boolean isFilmExists(Long id);
 
     Collection<Film> searchFilms(String query, SearchType searchType);
 
-    Collection<Film> getPopular(Long count, Long genreId, int year);
+    Collection<Film> getPopular(Long count, Long genreId, int year, RankType rank);
 
-    Collection<Film> getFilmsByDirector(Long id, String sortBy);
+    FilmPage getFilmsByDirector(Long id, String sortBy, RankType rank, String cursor, int size);
 
     Collection<Film> getRecommendedFilmsForUser(Long id);
 
-    Collection<Film> getCommonFilms(Long userId, Long friendId);
+    Collection<Film> findByIdsSortedByRating(Collection<Long> ids);
+
+    // true, если жанры, режиссеры и лайки уже загружены вместе с фильмом
+    boolean isAggregatedRead();
 }
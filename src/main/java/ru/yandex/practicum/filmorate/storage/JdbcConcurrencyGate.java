@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Ограничивает число одновременных обращений к БД размером пула соединений:
+// при виртуальных потоках тысячи запросов ждут здесь, а не внутри пула.
+@Slf4j
+@Component
+public class JdbcConcurrencyGate {
+    public static final JdbcConcurrencyGate UNBOUNDED = new JdbcConcurrencyGate(0, Duration.ZERO, (MeterRegistry) null);
+
+    private final Semaphore semaphore;
+    private final long timeoutNanos;
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+    private final Timer queuedTimer;
+    private final Timer executionTimer;
+
+    @Autowired
+    public JdbcConcurrencyGate(@Value("${filmorate.jdbc.gate.permits:${spring.datasource.hikari.maximum-pool-size:10}}")
+                               int permits,
+                               @Value("${filmorate.jdbc.gate.timeout:30s}") Duration timeout,
+                               ObjectProvider<MeterRegistry> registryProvider) {
+        this(permits, timeout, registryProvider.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    private JdbcConcurrencyGate(int permits, Duration timeout, MeterRegistry registry) {
+        this.semaphore = permits > 0 ? new Semaphore(permits, true) : null;
+        this.timeoutNanos = timeout.toNanos();
+        if (registry == null) {
+            queuedTimer = null;
+            executionTimer = null;
+            return;
+        }
+        queuedTimer = Timer.builder("filmorate.jdbc.gate.queued")
+                .description("Время ожидания доступа к БД")
+                .publishPercentileHistogram()
+                .register(registry);
+        executionTimer = Timer.builder("filmorate.jdbc.gate.execution")
+                .description("Время выполнения обращения к БД")
+                .publishPercentileHistogram()
+                .register(registry);
+        if (semaphore != null) {
+            Gauge.builder("filmorate.jdbc.gate.waiting", semaphore, Semaphore::getQueueLength)
+                    .description("Число потоков, ожидающих доступа к БД")
+                    .register(registry);
+            Gauge.builder("filmorate.jdbc.gate.available", semaphore, Semaphore::availablePermits)
+                    .register(registry);
+        }
+        log.info("Доступ к БД ограничен {} одновременными обращениями", permits);
+    }
+
+    public <T> T call(Supplier<T> action) {
+        // внутри транзакции соединение уже занято текущим потоком, повторное ожидание приведет к взаимоблокировке
+        if (semaphore == null || depth.get()[0] > 0 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get();
+        }
+        long queuedStart = System.nanoTime();
+        acquire();
+        long executionStart = System.nanoTime();
+        queuedTimer.record(executionStart - queuedStart, TimeUnit.NANOSECONDS);
+        int[] counter = depth.get();
+        counter[0]++;
+        try {
+            return action.get();
+        } finally {
+            counter[0]--;
+            semaphore.release();
+            executionTimer.record(System.nanoTime() - executionStart, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // -1 означает, что доступ к БД не ограничен
+    public int getAvailablePermits() {
+        return semaphore == null ? -1 : semaphore.availablePermits();
+    }
+
+    public int getWaiting() {
+        return semaphore == null ? 0 : semaphore.getQueueLength();
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void acquire() {
+        try {
+            if (!semaphore.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new InternalServerException("Превышено время ожидания доступа к базе данных");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("Ожидание доступа к базе данных прервано");
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ConflictException;
 import ru.yandex.practicum.filmorate.model.Review;
 
 import java.util.List;
@@ -24,10 +25,15 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
             VALUES (?, ?, ?, ?);
             """;
 
+    // ожидаемая версия NULL - обновление без проверки версии
     private static final String REQUEST_UPDATE_REVIEW = """
-            UPDATE "reviews"
-            SET "content" = ?, "is_positive" = ?
-            WHERE "review_id" = ?;
+            SELECT "version"
+            FROM FINAL TABLE (
+                UPDATE "reviews"
+                SET "content" = ?, "is_positive" = ?, "version" = "version" + 1
+                WHERE "review_id" = ?
+                    AND "version" = COALESCE(?, "version")
+            );
             """;
 
     private static final String REQUEST_DELETE_REVIEW = """
@@ -38,6 +44,7 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
     private static final String REQUEST_GET_REVIEW = """
             SELECT
                 r."review_id" AS review_id,
+                r."version" AS version,
                 r."film_id" AS film_id,
                 r."user_id" AS user_id,
                 r."content" AS content,
@@ -50,9 +57,10 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
             GROUP BY r."review_id";
             """;
 
-    private static final String REQUEST_GET_ALL_REVIEWS_FOR_FILM = """
+    static final String REQUEST_GET_ALL_REVIEWS_FOR_FILM = """
             SELECT
                 r."review_id" AS review_id,
+                r."version" AS version,
                 r."film_id" AS film_id,
                 r."user_id" AS user_id,
                 r."content" AS content,
@@ -71,6 +79,7 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
             WITH RankedReviews AS (
                 SELECT
                     "review_id" AS review_id,
+                    "version" AS version,
                     "film_id" AS film_id,
                     "user_id" AS user_id,
                     "content" AS content,
@@ -121,24 +130,32 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
 
     @Override
     public long createReview(Review review) {
-        return insertGetKey(REQUEST_ADD_REVIEW,
+        long id = insertGetKey(REQUEST_ADD_REVIEW,
                 review.getFilmId(),
                 review.getUserId(),
                 review.getContent(),
                 review.getIsPositive());
+        versions.bump(EntityVersions.Type.REVIEW, id);
+        return id;
     }
 
     @Override
     public void updateReview(Review review) {
-        update(REQUEST_UPDATE_REVIEW,
+        review.setVersion(updateVersioned(REQUEST_UPDATE_REVIEW,
                 review.getContent(),
                 review.getIsPositive(),
-                review.getReviewId());
+                review.getReviewId(),
+                review.getVersion()
+        ).orElseThrow(() -> new ConflictException("Отзыв с id = " + review.getReviewId()
+                + " изменен другим запросом, версия " + review.getVersion() + " устарела")));
+        versions.bump(EntityVersions.Type.REVIEW, review.getReviewId());
     }
 
     @Override
     public boolean deleteReview(Long id) {
-        return delete(REQUEST_DELETE_REVIEW, id);
+        boolean deleted = delete(REQUEST_DELETE_REVIEW, id);
+        versions.bump(EntityVersions.Type.REVIEW, id);
+        return deleted;
     }
 
     @Override
@@ -159,31 +176,37 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
     @Override
     public void setLike(Long reviewId, Long userId) {
         insert(REQUEST_SET_LIKE, userId, reviewId);
+        versions.bump(EntityVersions.Type.REVIEW, reviewId);
     }
 
     @Override
     public void updateLike(Long reviewId, Long userId) {
         update(REQUEST_UPDATE_TO_LIKE, userId, reviewId);
+        versions.bump(EntityVersions.Type.REVIEW, reviewId);
     }
 
     @Override
     public void setDislike(Long reviewId, Long userId) {
         insert(REQUEST_SET_DISLIKE, userId, reviewId);
+        versions.bump(EntityVersions.Type.REVIEW, reviewId);
     }
 
     @Override
     public void updateDislike(Long reviewId, Long userId) {
         update(REQUEST_UPDATE_TO_DISLIKE, userId, reviewId);
+        versions.bump(EntityVersions.Type.REVIEW, reviewId);
     }
 
     @Override
     public void removeLike(Long reviewId, Long userId) {
         update(REQUEST_REMOVE_LIKE, userId, reviewId);
+        versions.bump(EntityVersions.Type.REVIEW, reviewId);
     }
 
     @Override
     public void removeDislike(Long reviewId, Long userId) {
         update(REQUEST_REMOVE_DISLIKE, userId, reviewId);
+        versions.bump(EntityVersions.Type.REVIEW, reviewId);
     }
 
     @Override
@@ -5,6 +5,7 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ConflictException;
 import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
@@ -28,13 +29,19 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
             INSERT INTO "users" ("email", "login", "username", "birthday")
                         VALUES (?, ?, ?, ?);
             """;
+    // ожидаемая версия NULL - обновление без проверки версии
     private static final String USERS_UPDATE_QUERY = """
-            UPDATE "users"
-            SET "email" = ?,
-                "login" = ?,
-                "username" = ?,
-                "birthday" = ?
-            WHERE "user_id" = ?;
+            SELECT "version"
+            FROM FINAL TABLE (
+                UPDATE "users"
+                SET "email" = ?,
+                    "login" = ?,
+                    "username" = ?,
+                    "birthday" = ?,
+                    "version" = "version" + 1
+                WHERE "user_id" = ?
+                    AND "version" = COALESCE(?, "version")
+            );
             """;
     private static final String USERS_ADD_TO_FRIENDS_QUERY = """
             INSERT INTO "friends" ("user_id", "friend_id", "friendship_status_id")
@@ -54,7 +61,7 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
                 WHERE "user_id" = ?
                 );
             """;
-    private static final String USERS_FIND_COMMON_FRIENDS_QUERY = """
+    static final String USERS_FIND_COMMON_FRIENDS_QUERY = """
             SELECT *
             FROM "users" AS u
             WHERE u."user_id" IN (
@@ -87,14 +94,17 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
             WHERE "user_id" = ?;
             """;
 
-    public UserDbStorage(JdbcTemplate jdbc, RowMapper<User> mapper) {
+    private final FriendStorage friendStorage;
+
+    public UserDbStorage(JdbcTemplate jdbc, RowMapper<User> mapper, FriendStorage friendStorage) {
         super(jdbc, mapper);
+        this.friendStorage = friendStorage;
     }
 
     @Override
     public Collection<User> findAll() {
         log.info("Получение списка пользователей");
-        return findMany(USERS_FIND_ALL_QUERY);
+        return setFriends(findMany(USERS_FIND_ALL_QUERY));
     }
 
     @Override
@@ -106,7 +116,7 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         if (users.isEmpty()) {
             throw new NotFoundException("Пользователь с id = " + id + " не найден");
         }
-        return users.getFirst();
+        return setFriends(users).getFirst();
 
     }
 
@@ -121,6 +131,8 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
                 java.sql.Date.valueOf(user.getBirthday())
         );
         user.setId(id);
+        user.setVersion(0L);
+        versions.bump(EntityVersions.Type.USER, id);
         log.info("Пользователь {} добавлен в список с id = {}", user.getName(), user.getId());
         return user;
     }
@@ -132,14 +144,17 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         }
         if (isUserExists(user.getId())) {
             validate(user);
-            update(
+            user.setVersion(updateVersioned(
                     USERS_UPDATE_QUERY,
                     user.getEmail(),
                     user.getLogin(),
                     user.getName(),
                     java.sql.Date.valueOf(user.getBirthday()),
-                    user.getId()
-            );
+                    user.getId(),
+                    user.getVersion()
+            ).orElseThrow(() -> new ConflictException("Пользователь с id = " + user.getId()
+                    + " изменен другим запросом, версия " + user.getVersion() + " устарела")));
+            versions.bump(EntityVersions.Type.USER, user.getId());
             log.info("Пользователь с id = {} обновлен", user.getId());
             return user;
         }
@@ -152,6 +167,11 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         if (!isUserExists(id))
             throw new NotFoundException("Пользователь с id = " + id + " не найден");
         delete(USERS_DELETE, id);
+        // вместе с пользователем удалены его дружбы, оценки, отзывы и события ленты;
+        // версии фильмов меняет сервис после сброса кэша фильмов
+        versions.bumpAll(EntityVersions.Type.USER);
+        versions.bumpAll(EntityVersions.Type.REVIEW);
+        versions.bumpAll(EntityVersions.Type.FEED);
         log.info("Пользователь с id = {} удален", id);
     }
 
@@ -160,7 +180,8 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         User user = findOne(
                 USERS_FIND_BY_ID_QUERY,
                 id
-        ).orElse(null);
+        ).orElseThrow(() -> new NotFoundException("Пользователь с id = " + id + " не найден"));
+        setFriends(List.of(user));
         insert(
                 USERS_ADD_TO_FRIENDS_QUERY,
                 id,
@@ -168,6 +189,8 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
                 USERS_FRIENDSHIP_STATUS_UNCONFIRMED
         );
         user.addFriend(new Friend(friendId, USERS_FRIENDSHIP_STATUS_UNCONFIRMED));
+        versions.bump(EntityVersions.Type.USER, id);
+        versions.bump(EntityVersions.Type.USER, friendId);
         log.info("Пользователь с id = {} и пользователь с id = {} теперь друзья", friendId, id);
         return user;
     }
@@ -179,6 +202,8 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
                 id,
                 friendId
         );
+        versions.bump(EntityVersions.Type.USER, id);
+        versions.bump(EntityVersions.Type.USER, friendId);
         log.info("Пользователь с id = {} и пользователь с id = {} больше не друзья", friendId, id);
         return null;
     }
@@ -188,10 +213,10 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         if (!isUserExists(id))
             throw new NotFoundException("Пользователь с id = " + id + " не найден");
         log.info("Поиск друзей пользователя с id = {}", id);
-        return findMany(
+        return setFriends(findMany(
                 USERS_FIND_ALL_FRIENDS_QUERY,
                 id
-        );
+        ));
     }
 
     @Override
@@ -201,13 +226,13 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         if (!isUserExists(otherId))
             throw new NotFoundException("Пользователь с id = " + otherId + " не найден");
         log.info("Поиск общих друзей пользователя с id = {} и пользователя с id = {}", id, otherId);
-        return findMany(
+        return setFriends(findMany(
                 USERS_FIND_COMMON_FRIENDS_QUERY,
                 id,
                 id,
                 otherId,
                 otherId
-        );
+        ));
     }
 
     @Override
@@ -217,6 +242,15 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
                 id).isPresent();
     }
 
+    // друзья загружаются после основного запроса, а не в RowMapper: вложенный запрос внутри обработки
+    // результата занимал бы второе соединение из пула и при нагрузке приводил к его исчерпанию
+    private List<User> setFriends(List<User> users) {
+        for (User user : users) {
+            user.setFriends(friendStorage.findFriendsOfUser(user.getId()));
+        }
+        return users;
+    }
+
     private void validate(User user) {
         if (isDuplicatedEmail(user.getEmail())) {
             throw new DuplicatedDataException("Этот e-mail уже используется");
@@ -9,11 +9,12 @@ import ru.yandex.practicum.filmorate.model.OperationType;
 import ru.yandex.practicum.filmorate.model.UserFeed;
 
 import java.util.Collection;
+import java.util.List;
 
 @Slf4j
 @Component
 public class UserFeedDBStorage extends BaseDbStorage<UserFeed> implements UserFeedStorage {
-    private static final String USER_FEEDS_FIND_BY_USER_ID = """
+    static final String USER_FEEDS_FIND_BY_USER_ID = """
             SELECT
                 ue."user_event_id" AS "user_event_id",
                 ue."timestamp" AS "timestamp",
@@ -45,9 +46,26 @@ public class UserFeedDBStorage extends BaseDbStorage<UserFeed> implements UserFe
                 EventType.valueOf(userFeed.getEventType()).getValue(),
                 OperationType.valueOf(userFeed.getOperation()).getValue());
         userFeed.setEventId(id);
+        versions.bump(EntityVersions.Type.FEED, userFeed.getUserId());
         return userFeed;
     }
 
+    @Override
+    public void createAll(List<UserFeed> userFeeds) {
+        gate.run(() -> jdbc.batchUpdate(USER_FEEDS_INSERT_QUERY, userFeeds.stream()
+                .map(userFeed -> new Object[]{
+                        userFeed.getTimestamp().toEpochMilli(),
+                        userFeed.getUserId(),
+                        userFeed.getEntityId(),
+                        EventType.valueOf(userFeed.getEventType()).getValue(),
+                        OperationType.valueOf(userFeed.getOperation()).getValue()})
+                .toList()));
+        userFeeds.stream()
+                .map(UserFeed::getUserId)
+                .distinct()
+                .forEach(userId -> versions.bump(EntityVersions.Type.FEED, userId));
+    }
+
     @Override
     public Collection<UserFeed> findUserFeeds(Long id) {
         return findMany(USER_FEEDS_FIND_BY_USER_ID, id);
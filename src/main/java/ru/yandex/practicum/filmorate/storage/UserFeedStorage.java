@@ -3,9 +3,12 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.UserFeed;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface UserFeedStorage {
     UserFeed create(UserFeed userFeed);
 
+    void createAll(List<UserFeed> userFeeds);
+
     Collection<UserFeed> findUserFeeds(Long id);
 }
@@ -14,6 +14,7 @@ public class DirectorRowMapper implements RowMapper<Director> {
         Director director = new Director();
         director.setId(rs.getLong("director_id"));
         director.setName(rs.getString("name"));
+        director.setVersion(rs.getLong("version"));
         return director;
     }
 }
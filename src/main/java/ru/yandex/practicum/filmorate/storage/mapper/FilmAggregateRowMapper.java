@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.storage.mapper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Разбирает жанры и режиссеров, собранные в JSON-массивы тем же запросом, что и сам фильм.
+// Не является бином: иначе RowMapper<Film> станет неоднозначным для остальных хранилищ.
+public class FilmAggregateRowMapper extends FilmRowMapper {
+    public static final String GENRES_COLUMN = "genres_json";
+    public static final String DIRECTORS_COLUMN = "directors_json";
+
+    private final ObjectMapper objectMapper;
+
+    public FilmAggregateRowMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Film mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+        Film film = super.mapRow(resultSet, rowNum);
+        List<Genre> genres = new ArrayList<>();
+        for (JsonNode genre : readArray(resultSet.getString(GENRES_COLUMN))) {
+            genres.add(new Genre(genre.get(0).asInt(), genre.get(1).asText()));
+        }
+        film.setGenres(genres);
+        List<Director> directors = new ArrayList<>();
+        for (JsonNode director : readArray(resultSet.getString(DIRECTORS_COLUMN))) {
+            directors.add(new Director(director.get(0).asLong(), director.get(1).asText()));
+        }
+        film.setDirectors(directors);
+        return film;
+    }
+
+    private JsonNode readArray(String json) {
+        // JSON_ARRAYAGG по пустой выборке возвращает NULL
+        if (json == null) {
+            return objectMapper.createArrayNode();
+        }
+        try {
+            return objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new InternalServerException("Не удалось разобрать данные фильма: " + e.getMessage());
+        }
+    }
+}
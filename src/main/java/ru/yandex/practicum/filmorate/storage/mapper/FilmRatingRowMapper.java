@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.storage.mapper;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@Component
+public class FilmRatingRowMapper implements RowMapper<FilmRating> {
+    @Override
+    public FilmRating mapRow(ResultSet rs, int rowNum) throws SQLException {
+        FilmRating rating = new FilmRating();
+        // у фильма без оценок строки в "film_ratings" может не быть
+        Array marks = rs.getArray("marks");
+        if (marks == null) {
+            return rating;
+        }
+        rating.setCount(rs.getLong("likes_count"));
+        rating.setSum(rs.getLong("marks_sum"));
+        Object[] values = (Object[]) marks.getArray();
+        for (int mark = 0; mark < FilmRating.MARKS && mark < values.length; mark++) {
+            rating.getHistogram()[mark] = ((Number) values[mark]).intValue();
+        }
+        return rating;
+    }
+}
@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.storage.mapper;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmRating;
 import ru.yandex.practicum.filmorate.model.Mpa;
 
 import java.sql.ResultSet;
@@ -12,11 +13,13 @@ import java.time.Duration;
 @Component
 
 public class FilmRowMapper implements RowMapper<Film> {
+    private final RowMapper<FilmRating> ratingMapper = new FilmRatingRowMapper();
 
     @Override
     public Film mapRow(ResultSet resultSet, int rowNum) throws SQLException {
         Film film = new Film();
         film.setId(resultSet.getLong("film_id"));
+        film.setVersion(resultSet.getLong("version"));
         film.setName(resultSet.getString("name"));
         film.setDescription(resultSet.getString("description"));
         film.setReleaseDate(resultSet.getDate("release_date").toLocalDate());
@@ -25,6 +28,7 @@ public class FilmRowMapper implements RowMapper<Film> {
         mpa.setId(resultSet.getInt("mpa_id"));
         mpa.setName(resultSet.getString("mpa"));
         film.setMpa(mpa);
+        film.setRating(ratingMapper.mapRow(resultSet, rowNum));
         return film;
     }
 }
@@ -14,6 +14,7 @@ public class ReviewRowMapper implements RowMapper<Review> {
     public Review mapRow(ResultSet rs, int rowNum) throws SQLException {
         return Review.builder()
                 .reviewId(rs.getLong("review_id"))
+                .version(rs.getLong("version"))
                 .filmId(rs.getLong("film_id"))
                 .userId(rs.getLong("user_id"))
                 .content(rs.getString("content"))
@@ -1,28 +1,24 @@
 package ru.yandex.practicum.filmorate.storage.mapper;
 
-import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.storage.FriendStorage;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
 @Component
-@RequiredArgsConstructor
 public class UserRowMapper implements RowMapper<User> {
-    private final FriendStorage friendStorage;
 
     @Override
     public User mapRow(ResultSet resultSet, int rowNum) throws SQLException {
         User user = new User();
         user.setId(resultSet.getLong("user_id"));
+        user.setVersion(resultSet.getLong("version"));
         user.setName(resultSet.getString("username"));
         user.setEmail(resultSet.getString("email"));
         user.setLogin(resultSet.getString("login"));
         user.setBirthday(resultSet.getDate("birthday").toLocalDate());
-        user.setFriends(friendStorage.findFriendsOfUser(user.getId()));
         return user;
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.warmup;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+// Результат прогрева для readiness-пробы (management.endpoint.health.group.readiness.include):
+// прерванный прогрев держит приложение вне балансировки, пока его не перезапустят
+@Component
+public class WarmupHealthIndicator implements HealthIndicator {
+    private volatile String failure;
+
+    void fail(String message) {
+        failure = message;
+    }
+
+    @Override
+    public Health health() {
+        if (failure == null) {
+            return Health.up().build();
+        }
+        return Health.outOfService().withDetail("error", failure).build();
+    }
+}
@@ -0,0 +1,207 @@
+package ru.yandex.practicum.filmorate.warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.MpaService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Прогрев после старта: заполняет кэши популярных фильмов и поиска, читает справочники и активных пользователей,
+// затем многократно прогоняет горячие пути сервисов и сериализацию, чтобы их успел скомпилировать JIT.
+// Раннеры выполняются до ApplicationReadyEvent, поэтому readiness-проба переходит в ACCEPTING_TRAFFIC только после прогрева,
+// а если прогрев прерван, WarmupHealthIndicator оставляет ее в OUT_OF_SERVICE.
+@Slf4j
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class WarmupRunner implements ApplicationRunner {
+    private static final List<String> BY_TITLE = List.of("title");
+    private static final List<String> BY_TITLE_AND_DIRECTOR = List.of("title", "director");
+    private static final long POPULAR_COUNT = 10;
+    private static final String POPULAR_RANK = "avg";
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final GenreService genreService;
+    private final MpaService mpaService;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final MeterRegistry registry;
+    private final WarmupHealthIndicator health;
+    private final boolean enabled;
+    private final int sampleSize;
+    private final int iterations;
+
+    public WarmupRunner(FilmService filmService,
+                        UserService userService,
+                        GenreService genreService,
+                        MpaService mpaService,
+                        ObjectMapper objectMapper,
+                        ExecutorService hydrationExecutor,
+                        ObjectProvider<MeterRegistry> registryProvider,
+                        WarmupHealthIndicator health,
+                        @Value("${filmorate.warmup.enabled:true}") boolean enabled,
+                        @Value("${filmorate.warmup.sample-size:20}") int sampleSize,
+                        @Value("${filmorate.warmup.iterations:200}") int iterations) {
+        this.filmService = filmService;
+        this.userService = userService;
+        this.genreService = genreService;
+        this.mpaService = mpaService;
+        this.objectMapper = objectMapper;
+        this.executor = hydrationExecutor;
+        this.registry = registryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        this.health = health;
+        this.enabled = enabled;
+        this.sampleSize = sampleSize;
+        this.iterations = iterations;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            // справочники, популярные фильмы, поиск и пользователи независимы и читаются параллельно;
+            // поиск берет запросы из популярных фильмов, их загрузка выполняется один раз благодаря кэшу
+            CompletableFuture<Collection<Genre>> genres = submit("reference", this::warmReference);
+            CompletableFuture<List<Film>> popular = submit("popular", () -> warmPopular(genres.join()));
+            CompletableFuture<Integer> searches = submit("search", this::warmSearch);
+            CompletableFuture<List<Long>> users = submit("users", () -> warmUsers(popular.join()));
+            CompletableFuture.allOf(genres, popular, searches, users).join();
+            stage("jit", () -> warmHotPaths(popular.join(), users.join()));
+            log.info("Прогрев завершен за {} мс: фильмов = {}, поисковых запросов = {}, пользователей = {}",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    popular.join().size(), searches.join(), users.join().size());
+        } catch (RuntimeException e) {
+            // прогрев читает те же данные, что и запросы: его ошибка означает, что приложение не готово
+            log.error("Прогрев прерван через {} мс",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), e);
+            health.fail(e.getMessage());
+        }
+    }
+
+    private Collection<Genre> warmReference() {
+        Collection<Genre> genres = genreService.findAll();
+        genres.forEach(genre -> genreService.findById(genre.getId()));
+        Collection<Mpa> mpas = mpaService.findAll();
+        mpas.forEach(mpa -> mpaService.findById(mpa.getId()));
+        return genres;
+    }
+
+    private List<Film> warmPopular(Collection<Genre> genres) {
+        List<Film> films = new ArrayList<>(filmService.getPopular(POPULAR_COUNT, 0L, 0, POPULAR_RANK));
+        for (Genre genre : genres) {
+            filmService.getPopular(POPULAR_COUNT, (long) genre.getId(), 0, POPULAR_RANK);
+        }
+        return films;
+    }
+
+    private int warmSearch() {
+        Set<String> queries = new LinkedHashSet<>();
+        for (Film film : filmService.getPopular(POPULAR_COUNT, 0L, 0, POPULAR_RANK)) {
+            if (film.getName() != null && !film.getName().isBlank()) {
+                queries.add(film.getName().strip().split("\\s+")[0].toLowerCase(Locale.ROOT));
+            }
+            if (queries.size() >= sampleSize) {
+                break;
+            }
+        }
+        for (String query : queries) {
+            filmService.searchFilms(query, BY_TITLE);
+            filmService.searchFilms(query, BY_TITLE_AND_DIRECTOR);
+        }
+        return queries.size();
+    }
+
+    // активные пользователи - те, кто оценил популярные фильмы
+    private List<Long> warmUsers(List<Film> popular) {
+        Set<Long> usersId = new LinkedHashSet<>();
+        for (Film film : popular) {
+            for (FilmLike like : filmService.findLikes(film.getId(), 0, sampleSize)) {
+                usersId.add(like.getUserId());
+            }
+            if (usersId.size() >= sampleSize) {
+                break;
+            }
+        }
+        List<Long> sample = usersId.stream().limit(sampleSize).toList();
+        for (Long userId : sample) {
+            userService.findById(userId);
+            userService.findAllFriends(userId);
+            userService.findUserFeeds(userId);
+        }
+        return sample;
+    }
+
+    private void warmHotPaths(List<Film> popular, List<Long> users) {
+        for (int i = 0; i < iterations; i++) {
+            serialize(filmService.getPopular(POPULAR_COUNT, 0L, 0, POPULAR_RANK));
+            for (Film film : popular) {
+                serialize(filmService.findById(film.getId()));
+            }
+            for (Long userId : users) {
+                serialize(userService.findById(userId));
+            }
+        }
+    }
+
+    private void serialize(Object value) {
+        try {
+            objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(String stage, Supplier<T> action) {
+        return CompletableFuture.supplyAsync(() -> stage(stage, action), executor);
+    }
+
+    private void stage(String stage, Runnable action) {
+        stage(stage, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> T stage(String stage, Supplier<T> action) {
+        long start = System.nanoTime();
+        T result = action.get();
+        long elapsed = System.nanoTime() - start;
+        Timer.builder("filmorate.warmup")
+                .description("Длительность этапа прогрева")
+                .tag("stage", stage)
+                .register(registry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Прогрев: этап {} за {} мс", stage, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return result;
+    }
+}
@@ -0,0 +1,157 @@
+-- Базовая схема. База, созданная до перехода на миграции прежним schema.sql,
+-- принимается за эту версию (spring.flyway.baseline-on-migrate) и дальше обновляется следующими миграциями.
+create TABLE "users" (
+  "user_id" BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "email" varchar NOT NULL,
+  "login" varchar,
+  "username" varchar,
+  "birthday" date
+);
+
+create TABLE "friends" (
+  "user_id" bigint NOT NULL,
+  "friend_id" bigint NOT NULL,
+  "friendship_status_id" int,
+  PRIMARY KEY ("user_id", "friend_id")
+);
+
+create TABLE "friendship_status" (
+  "friendship_status_id" INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "status" varchar
+);
+
+create TABLE "films" (
+  "film_id" BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "name" varchar,
+  "description" varchar,
+  "release_date" date,
+  -- хранимый год выпуска: фильтр по году идет по индексу, а не через EXTRACT по каждой строке
+  "release_year" int GENERATED ALWAYS AS (EXTRACT(YEAR FROM "release_date")),
+  "duration" int,
+  "mpa_id" int
+);
+
+create TABLE "mpas" (
+  "mpa_id" INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "mpa" varchar
+);
+
+create TABLE "likes" (
+  "film_id" bigint NOT NULL,
+  "user_id" bigint NOT NULL,
+  "mark" INTEGER NOT NULL CHECK ("mark" >= 0 AND "mark" <= 10),
+  PRIMARY KEY ("film_id", "user_id")
+);
+
+-- сводка по лайкам фильма, обновляется вместе с "likes"
+create TABLE "film_ratings" (
+  "film_id" bigint PRIMARY KEY,
+  "likes_count" int NOT NULL DEFAULT 0,
+  "marks_sum" bigint NOT NULL DEFAULT 0,
+  "marks" INTEGER ARRAY[11] NOT NULL,
+  "average" DOUBLE PRECISION GENERATED ALWAYS AS (CAST("marks_sum" AS DOUBLE PRECISION) / NULLIF("likes_count", 0))
+);
+
+create TABLE "films_genre" (
+  "film_id" bigint NOT NULL,
+  "genre_id" int NOT NULL,
+  PRIMARY KEY ("film_id", "genre_id")
+);
+
+create TABLE "genres" (
+  "genre_id" INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "genre" varchar
+);
+
+create TABLE "user_events" (
+  "user_event_id" BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "timestamp" bigint,
+  "user_id" bigint,
+  "entity_id" bigint,
+  "event_type_id" int,
+  "operation_type_id" int
+);
+
+create TABLE "event_types" (
+  "event_type_id" INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "name" varchar
+);
+
+create TABLE "operation_types" (
+  "operation_type_id" INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "name" varchar
+);
+
+create TABLE "films_director" (
+  "film_id" bigint NOT NULL,
+  "director_id" BIGINT NOT NULL,
+  PRIMARY KEY ("film_id", "director_id")
+);
+
+create TABLE "directors" (
+  "director_id" BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  "name" varchar
+);
+
+create TABLE "usabilitys" (
+    "usability_id" INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    "usability" VARCHAR UNIQUE NOT NULL,
+    "weigh" INTEGER NOT NULL
+);
+
+create TABLE "reviews" (
+    "review_id" BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    "film_id" BIGINT NOT NULL REFERENCES "films" ("film_id") ON delete CASCADE,
+    "user_id" BIGINT NOT NULL REFERENCES "users" ("user_id") ON delete CASCADE,  -- автор отзыва
+    "content" VARCHAR,
+    "is_positive" BOOLEAN
+);
+
+create TABLE "usability_reviews" (
+    "usability_review_id" BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    "user_id" BIGINT NOT NULL REFERENCES "users" ("user_id") ON delete CASCADE,  -- оценщик отзыва
+    "review_id" BIGINT NOT NULL REFERENCES "reviews" ("review_id") ON delete CASCADE,
+    "usability_id" INT REFERENCES "usabilitys" ("usability_id") ON delete CASCADE,
+    UNIQUE ("review_id", "user_id")
+);
+
+-- вторичные индексы под условия горячих запросов; создаются до внешних ключей,
+-- чтобы H2 использовал их для ограничений вместо собственных индексов по тем же колонкам.
+-- "reviews"."film_id" уже проиндексирован внешним ключом из определения таблицы
+create INDEX "films_release_year_idx" ON "films" ("release_year");
+
+create INDEX "likes_user_id_idx" ON "likes" ("user_id", "film_id");
+
+create INDEX "friends_friend_id_idx" ON "friends" ("friend_id");
+
+create INDEX "films_genre_genre_id_idx" ON "films_genre" ("genre_id", "film_id");
+
+create INDEX "films_director_director_id_idx" ON "films_director" ("director_id", "film_id");
+
+create INDEX "user_events_user_id_idx" ON "user_events" ("user_id", "user_event_id");
+
+alter table "friends" add FOREIGN KEY ("friendship_status_id") REFERENCES "friendship_status" ("friendship_status_id");
+
+alter table "friends" add FOREIGN KEY ("user_id") REFERENCES "users" ("user_id") ON delete CASCADE;
+
+alter table "friends" add FOREIGN KEY ("friend_id") REFERENCES "users" ("user_id") ON delete CASCADE;
+
+alter table "films" add FOREIGN KEY ("mpa_id") REFERENCES "mpas" ("mpa_id");
+
+alter table "likes" add FOREIGN KEY ("film_id") REFERENCES "films" ("film_id") ON delete CASCADE;
+
+alter table "likes" add FOREIGN KEY ("user_id") REFERENCES "users" ("user_id") ON delete CASCADE;
+
+alter table "film_ratings" add FOREIGN KEY ("film_id") REFERENCES "films" ("film_id") ON delete CASCADE;
+
+alter table "films_genre" add FOREIGN KEY ("film_id") REFERENCES "films" ("film_id") ON delete CASCADE;
+
+alter table "films_genre" add FOREIGN KEY ("genre_id") REFERENCES "genres" ("genre_id");
+
+alter table "user_events" add FOREIGN KEY ("event_type_id") REFERENCES "event_types" ("event_type_id");
+
+alter table "user_events" add FOREIGN KEY ("operation_type_id") REFERENCES "operation_types" ("operation_type_id");
+
+alter table "films_director" add FOREIGN KEY ("film_id") REFERENCES "films" ("film_id") ON delete CASCADE;
+
+alter table "films_director" add FOREIGN KEY ("director_id") REFERENCES "directors" ("director_id") ON delete CASCADE;
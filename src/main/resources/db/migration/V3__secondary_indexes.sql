@@ -0,0 +1,16 @@
+-- Доводит до актуального состояния базы, принятые за V1 со схемой старше вторичных индексов.
+-- На базе, созданной с V1, ничего не меняет.
+alter table "films" add COLUMN IF NOT EXISTS "release_year" int
+    GENERATED ALWAYS AS (EXTRACT(YEAR FROM "release_date")) AFTER "release_date";
+
+create INDEX IF NOT EXISTS "films_release_year_idx" ON "films" ("release_year");
+
+create INDEX IF NOT EXISTS "likes_user_id_idx" ON "likes" ("user_id", "film_id");
+
+create INDEX IF NOT EXISTS "friends_friend_id_idx" ON "friends" ("friend_id");
+
+create INDEX IF NOT EXISTS "films_genre_genre_id_idx" ON "films_genre" ("genre_id", "film_id");
+
+create INDEX IF NOT EXISTS "films_director_director_id_idx" ON "films_director" ("director_id", "film_id");
+
+create INDEX IF NOT EXISTS "user_events_user_id_idx" ON "user_events" ("user_id", "user_event_id");
@@ -0,0 +1,9 @@
+-- Номер версии строки для оптимистической блокировки: каждое обновление увеличивает его на 1,
+-- а обновление с ожидаемой версией применяется, только если строку за это время никто не изменил.
+alter table "films" add COLUMN IF NOT EXISTS "version" bigint NOT NULL DEFAULT 0;
+
+alter table "users" add COLUMN IF NOT EXISTS "version" bigint NOT NULL DEFAULT 0;
+
+alter table "directors" add COLUMN IF NOT EXISTS "version" bigint NOT NULL DEFAULT 0;
+
+alter table "reviews" add COLUMN IF NOT EXISTS "version" bigint NOT NULL DEFAULT 0;
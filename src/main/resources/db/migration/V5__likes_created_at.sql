@@ -0,0 +1,6 @@
+-- Время последней оценки: по нему при старте восстанавливаются счетчики набирающих популярность фильмов.
+-- У оценок, поставленных до миграции, и у импортированных время неизвестно - NULL, в окна они не попадают.
+alter table "likes" add COLUMN IF NOT EXISTS "created_at" TIMESTAMP WITH TIME ZONE;
+
+-- счетчики восстанавливаются по голосу каждого пользователя, индекс содержит и "user_id"
+create INDEX IF NOT EXISTS "likes_created_at_idx" ON "likes" ("created_at", "film_id", "user_id");
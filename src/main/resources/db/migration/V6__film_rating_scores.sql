@@ -0,0 +1,15 @@
+-- Оценки для ранжирования, пересчитываются вместе с суммой и числом оценок фильма, чтение их не вычисляет.
+-- bayes_score - среднее с априорными 10 оценками по 5: одна десятка не обгоняет тысячи девяток.
+-- wilson_score - нижняя граница 95% доверительного интервала Уилсона для доли marks_sum / (10 * likes_count).
+-- Без оценок обе колонки NULL, как и "average", и выборки ставят такой фильм в конец.
+alter table IF EXISTS "film_ratings" add COLUMN IF NOT EXISTS "bayes_score" DOUBLE PRECISION
+    GENERATED ALWAYS AS (CASE WHEN "likes_count" = 0 THEN NULL ELSE
+        (CAST("marks_sum" AS DOUBLE PRECISION) + 10 * 5) / ("likes_count" + 10) END);
+
+alter table IF EXISTS "film_ratings" add COLUMN IF NOT EXISTS "wilson_score" DOUBLE PRECISION
+    GENERATED ALWAYS AS (CASE WHEN "likes_count" = 0 THEN NULL ELSE
+        (CAST("marks_sum" AS DOUBLE PRECISION) / (10 * "likes_count") + 1.9208 / "likes_count"
+            - 1.96 * SQRT((CAST("marks_sum" AS DOUBLE PRECISION) / (10 * "likes_count")
+                * (1 - CAST("marks_sum" AS DOUBLE PRECISION) / (10 * "likes_count"))
+                + 0.9604 / "likes_count") / "likes_count"))
+        / (1 + 3.8416 / "likes_count") END);
@@ -0,0 +1,5 @@
+-- Оценки пользователя читаются страницами по индексу без обращения к таблице: индекс содержит и "mark".
+-- Прежний индекс ("user_id", "film_id") - префикс нового и больше не нужен.
+create INDEX IF NOT EXISTS "likes_user_id_mark_idx" ON "likes" ("user_id", "film_id", "mark");
+
+drop INDEX IF EXISTS "likes_user_id_idx";
@@ -0,0 +1,36 @@
+-- База, созданная прежним schema.sql до появления сводки оценок, принимается за V1 без выполнения V1,
+-- поэтому "film_ratings" в ней нет, а V6 такую таблицу пропускает. Здесь таблица создается с колонками V1 и V6
+-- и заполняется по "likes". На базе, созданной с V1, ничего не меняет: сводка уже есть у каждого фильма.
+create TABLE IF NOT EXISTS "film_ratings" (
+  "film_id" bigint PRIMARY KEY REFERENCES "films" ("film_id") ON delete CASCADE,
+  "likes_count" int NOT NULL DEFAULT 0,
+  "marks_sum" bigint NOT NULL DEFAULT 0,
+  "marks" INTEGER ARRAY[11] NOT NULL,
+  "average" DOUBLE PRECISION GENERATED ALWAYS AS (CAST("marks_sum" AS DOUBLE PRECISION) / NULLIF("likes_count", 0)),
+  "bayes_score" DOUBLE PRECISION
+    GENERATED ALWAYS AS (CASE WHEN "likes_count" = 0 THEN NULL ELSE
+        (CAST("marks_sum" AS DOUBLE PRECISION) + 10 * 5) / ("likes_count" + 10) END),
+  "wilson_score" DOUBLE PRECISION
+    GENERATED ALWAYS AS (CASE WHEN "likes_count" = 0 THEN NULL ELSE
+        (CAST("marks_sum" AS DOUBLE PRECISION) / (10 * "likes_count") + 1.9208 / "likes_count"
+            - 1.96 * SQRT((CAST("marks_sum" AS DOUBLE PRECISION) / (10 * "likes_count")
+                * (1 - CAST("marks_sum" AS DOUBLE PRECISION) / (10 * "likes_count"))
+                + 0.9604 / "likes_count") / "likes_count"))
+        / (1 + 3.8416 / "likes_count") END)
+);
+
+insert into "film_ratings" ("film_id", "likes_count", "marks_sum", "marks")
+select
+    f."film_id",
+    COUNT(l."mark"),
+    COALESCE(SUM(l."mark"), 0),
+    ARRAY[COUNT(CASE WHEN l."mark" = 0 THEN 1 END), COUNT(CASE WHEN l."mark" = 1 THEN 1 END),
+        COUNT(CASE WHEN l."mark" = 2 THEN 1 END), COUNT(CASE WHEN l."mark" = 3 THEN 1 END),
+        COUNT(CASE WHEN l."mark" = 4 THEN 1 END), COUNT(CASE WHEN l."mark" = 5 THEN 1 END),
+        COUNT(CASE WHEN l."mark" = 6 THEN 1 END), COUNT(CASE WHEN l."mark" = 7 THEN 1 END),
+        COUNT(CASE WHEN l."mark" = 8 THEN 1 END), COUNT(CASE WHEN l."mark" = 9 THEN 1 END),
+        COUNT(CASE WHEN l."mark" = 10 THEN 1 END)]
+from "films" AS f
+LEFT JOIN "likes" AS l ON l."film_id" = f."film_id"
+where NOT EXISTS (select 1 from "film_ratings" AS fr where fr."film_id" = f."film_id")
+GROUP BY f."film_id";
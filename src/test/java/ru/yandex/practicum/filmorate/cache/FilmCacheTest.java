@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilmCacheTest {
+    private final FilmCache cache = new FilmCache(true, 1000, Duration.ofMinutes(10),
+            new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void filmIsLoadedOnceUntilInvalidated() {
+        assertEquals("Фильм 1", cache.get(1L, this::load).getName());
+        assertEquals("Фильм 1", cache.get(1L, this::load).getName());
+        assertEquals(1, loads.get());
+
+        cache.invalidate(1L);
+        assertNull(cache.peek(1L));
+        assertEquals("Фильм 2", cache.get(1L, this::load).getName());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateAllDropsEveryFilm() {
+        cache.get(1L, this::load);
+        cache.get(2L, this::load);
+
+        cache.invalidateAll();
+
+        assertNull(cache.peek(1L));
+        assertNull(cache.peek(2L));
+    }
+
+    // загрузка прочитала фильм до изменения, а инвалидация пришла до записи в кэш:
+    // вызывающий получает прочитанное, но кэш его не запоминает
+    @Test
+    void loadRacingInvalidationIsNotCached() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Film> stale = executor.submit(() -> cache.get(1L, id -> {
+                Film film = load(id);
+                loading.countDown();
+                await(invalidated);
+                return film;
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            cache.invalidate(1L);
+            invalidated.countDown();
+
+            assertEquals("Фильм 1", stale.get(5, TimeUnit.SECONDS).getName());
+        }
+        assertNull(cache.peek(1L));
+        assertEquals("Фильм 2", cache.get(1L, this::load).getName());
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        FilmCache disabled = new FilmCache(false, 1000, Duration.ofMinutes(10),
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+        disabled.get(1L, this::load);
+        disabled.get(1L, this::load);
+
+        assertEquals(2, loads.get());
+        assertNull(disabled.peek(1L));
+    }
+
+    // имя фильма - номер загрузки, по нему видно, откуда взят результат
+    private Film load(Long id) {
+        return Film.builder()
+                .id(id)
+                .name("Фильм " + loads.incrementAndGet())
+                .genres(List.of())
+                .directors(List.of())
+                .build();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.RankType;
+import ru.yandex.practicum.filmorate.model.SearchType;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilmQueryCacheTest {
+    private static final FilmQuery POPULAR = FilmQuery.popular(10L, 0L, 0, RankType.AVG);
+    private static final FilmQuery SEARCH = FilmQuery.search("Фильм", SearchType.TITLE);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void closeExecutor() {
+        executor.close();
+    }
+
+    @Test
+    void staleEntryIsReturnedWhileRefreshRunsInBackground() throws Exception {
+        FilmQueryCache cache = cache(Duration.ZERO);
+        assertEquals(List.of(1L), ids(cache.get(POPULAR, this::load)));
+
+        CountDownLatch refreshing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Collection<Film> stale = cache.get(POPULAR, query -> {
+            refreshing.countDown();
+            await(release);
+            return load(query);
+        });
+        assertEquals(List.of(1L), ids(stale));
+        assertTrue(refreshing.await(5, TimeUnit.SECONDS));
+        // пока пересчет не закончился, отдается прежний результат и вторая загрузка не запускается
+        assertEquals(List.of(1L), ids(cache.get(POPULAR, this::load)));
+        assertEquals(1, loads.get());
+        release.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!ids(cache.get(POPULAR, query -> List.of())).equals(List.of(2L))) {
+            assertTrue(System.nanoTime() < deadline, "Фоновый пересчет не обновил запись");
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    @Test
+    void invalidateRemovesMatchingQueriesAndResultsWithChangedFilms() {
+        FilmQueryCache cache = cache(Duration.ofHours(1));
+        cache.get(POPULAR, this::load);
+        cache.get(SEARCH, this::load);
+
+        // поиск не подходит под условие и не содержит фильм 100
+        cache.invalidate(query -> query instanceof FilmQuery.Popular, List.of(100L));
+        assertEquals(List.of(3L), ids(cache.get(POPULAR, this::load)));
+        assertEquals(List.of(2L), ids(cache.get(SEARCH, this::load)));
+
+        // условие не подходит ни под один запрос, но фильм 2 есть в результате поиска
+        cache.invalidate(query -> false, List.of(2L));
+        assertEquals(List.of(3L), ids(cache.get(POPULAR, this::load)));
+        assertEquals(List.of(4L), ids(cache.get(SEARCH, this::load)));
+    }
+
+    // загрузка, во время которой пришла инвалидация, отдается вызывающему, но в кэше не остается
+    @Test
+    void loadOverlappingInvalidationIsNotCached() throws Exception {
+        FilmQueryCache cache = cache(Duration.ofHours(1));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        Future<Collection<Film>> result = executor.submit(() -> cache.get(POPULAR, query -> {
+            Collection<Film> films = load(query);
+            loading.countDown();
+            await(invalidated);
+            return films;
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.invalidate(query -> false, List.of());
+        invalidated.countDown();
+
+        assertEquals(List.of(1L), ids(result.get(5, TimeUnit.SECONDS)));
+        assertEquals(List.of(2L), ids(cache.get(POPULAR, this::load)));
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        FilmQueryCache cache = cache(Duration.ofHours(1));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<FilmQuery, Collection<Film>> slowLoader = query -> {
+            loading.countDown();
+            await(release);
+            return load(query);
+        };
+        Future<Collection<Film>> first = executor.submit(() -> cache.get(POPULAR, slowLoader));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Future<Collection<Film>> second = executor.submit(() -> cache.get(POPULAR, slowLoader));
+        TimeUnit.MILLISECONDS.sleep(50);
+        release.countDown();
+
+        assertEquals(List.of(1L), ids(first.get(5, TimeUnit.SECONDS)));
+        assertEquals(List.of(1L), ids(second.get(5, TimeUnit.SECONDS)));
+        assertEquals(1, loads.get());
+    }
+
+    private FilmQueryCache cache(Duration refreshAfter) {
+        return new FilmQueryCache(true, 100, refreshAfter, Duration.ofHours(1), executor,
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    // результат - один фильм с id, равным номеру загрузки
+    private Collection<Film> load(FilmQuery query) {
+        return List.of(Film.builder()
+                .id((long) loads.incrementAndGet())
+                .name("Фильм")
+                .genres(List.of())
+                .directors(List.of())
+                .build());
+    }
+
+    private static List<Long> ids(Collection<Film> films) {
+        return films.stream().map(Film::getId).toList();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// ETag фильма меняется только после сброса кэшей: иначе новый ETag закрепился бы за старым телом и дальше давал 304
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:conditional;DB_CLOSE_DELAY=-1",
+        "filmorate.warmup.enabled=false"
+})
+@AutoConfigureMockMvc
+class FilmConditionalGetTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private RecordingVersions versions;
+    @SpyBean
+    private FilmService filmService;
+    @SpyBean
+    private UserService userService;
+    @SpyBean
+    private DirectorService directorService;
+
+    private Long filmId;
+    private Long userId;
+
+    @TestConfiguration
+    static class VersionsConfig {
+        @Bean
+        @Primary
+        RecordingVersions recordingVersions(FilmCache filmCache) {
+            return new RecordingVersions(filmCache);
+        }
+    }
+
+    // запоминает, был ли фильм в кэше в момент смены его версии
+    static class RecordingVersions extends EntityVersions {
+        private final FilmCache filmCache;
+        private final List<Long> cachedOnBump = new ArrayList<>();
+
+        RecordingVersions(FilmCache filmCache) {
+            this.filmCache = filmCache;
+        }
+
+        @Override
+        public void bump(Type type, Long id) {
+            if (type == Type.FILM && filmCache.peek(id) != null) {
+                synchronized (cachedOnBump) {
+                    cachedOnBump.add(id);
+                }
+            }
+            super.bump(type, id);
+        }
+    }
+
+    @BeforeEach
+    void createFilmAndUser() throws Exception {
+        filmId = id(mockMvc.perform(post("/films")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"Фильм\", \"description\": \"Описание\", "
+                                + "\"releaseDate\": \"2000-01-01\", \"duration\": 90, \"mpa\": {\"id\": 1}}"))
+                .andExpect(status().isOk())
+                .andReturn());
+        userId = id(mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\": \"etag%d@ya.ru\", \"login\": \"etag%d\", \"birthday\": \"2000-01-01\"}"
+                                .formatted(filmId, filmId)))
+                .andExpect(status().isOk())
+                .andReturn());
+    }
+
+    @Test
+    void filmEtagChangesTogetherWithRating() throws Exception {
+        String etag = etag(mockMvc.perform(get("/films/{id}", filmId))
+                .andExpect(status().isOk())
+                .andReturn());
+        mockMvc.perform(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(put("/films/{id}/like/{userId}", filmId, userId).param("mark", "7"))
+                .andExpect(status().isOk());
+
+        String changed = etag(mockMvc.perform(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rating.average").value(7.0))
+                .andReturn());
+        assertNotEquals(etag, changed);
+        mockMvc.perform(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, changed))
+                .andExpect(status().isNotModified());
+        assertFalse(versions.cachedOnBump.contains(filmId), "Версия фильма сменилась до сброса кэша");
+    }
+
+    @Test
+    void popularEtagChangesTogetherWithList() throws Exception {
+        String etag = etag(mockMvc.perform(get("/films/popular").param("count", "1000"))
+                .andExpect(status().isOk())
+                .andReturn());
+        mockMvc.perform(get("/films/popular").param("count", "1000").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(put("/films/{id}/like/{userId}", filmId, userId).param("mark", "10"))
+                .andExpect(status().isOk());
+
+        String changed = etag(mockMvc.perform(get("/films/popular").param("count", "1000")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.id == %d)].rating.average".formatted(filmId)).value(10.0))
+                .andReturn());
+        mockMvc.perform(get("/films/popular").param("count", "1000").header(HttpHeaders.IF_NONE_MATCH, changed))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(delete("/films/{id}/like/{userId}", filmId, userId))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/films/popular").param("count", "1000").header(HttpHeaders.IF_NONE_MATCH, changed))
+                .andExpect(status().isOk());
+        assertFalse(versions.cachedOnBump.contains(filmId), "Версия фильма сменилась до сброса кэша");
+    }
+
+    // 304 отдается по счетчику версий до обращения к сервису: сущность не читается и не собирается
+    @Test
+    void notModifiedDoesNotLoadEntity() throws Exception {
+        Long directorId = id(mockMvc.perform(post("/directors")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"Режиссер\"}"))
+                .andExpect(status().isOk())
+                .andReturn());
+        String filmEtag = etag(mockMvc.perform(get("/films/{id}", filmId)).andReturn());
+        String userEtag = etag(mockMvc.perform(get("/users/{id}", userId)).andReturn());
+        String directorEtag = etag(mockMvc.perform(get("/directors/{id}", directorId)).andReturn());
+        clearInvocations(filmService, userService, directorService);
+
+        mockMvc.perform(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, filmEtag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, filmEtag));
+        mockMvc.perform(get("/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + userEtag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/directors/{id}", directorId).header(HttpHeaders.IF_NONE_MATCH, directorEtag))
+                .andExpect(status().isNotModified());
+
+        verify(filmService, never()).findById(any());
+        verify(userService, never()).findById(any());
+        verify(directorService, never()).getDirectorById(any());
+    }
+
+    // PUT отдает ETag в том же формате, что и GET: по нему чтение дает 304, а следующее обновление проходит If-Match
+    @Test
+    void putEtagIsValidForGetAndIfMatch() throws Exception {
+        String updated = etag(mockMvc.perform(put("/films")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(film("Новое название")))
+                .andExpect(status().isOk())
+                .andReturn());
+        mockMvc.perform(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, updated))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(put("/films")
+                        .header(HttpHeaders.IF_MATCH, updated)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(film("Еще одно название")))
+                .andExpect(status().isOk());
+        mockMvc.perform(put("/films")
+                        .header(HttpHeaders.IF_MATCH, updated)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(film("Устаревшее название")))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void directorPutEtagIsValidForGet() throws Exception {
+        Long directorId = id(mockMvc.perform(post("/directors")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"Режиссер\"}"))
+                .andExpect(status().isOk())
+                .andReturn());
+        String etag = etag(mockMvc.perform(get("/directors/{id}", directorId))
+                .andExpect(status().isOk())
+                .andReturn());
+
+        String updated = etag(mockMvc.perform(put("/directors")
+                        .header(HttpHeaders.IF_MATCH, etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\": %d, \"name\": \"Другой режиссер\"}".formatted(directorId)))
+                .andExpect(status().isOk())
+                .andReturn());
+        assertNotEquals(etag, updated);
+        mockMvc.perform(get("/directors/{id}", directorId).header(HttpHeaders.IF_NONE_MATCH, updated))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/directors/{id}", directorId).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    private String film(String name) {
+        return "{\"id\": %d, \"name\": \"%s\", \"description\": \"Описание\", \"releaseDate\": \"2000-01-01\", "
+                .formatted(filmId, name) + "\"duration\": 90, \"mpa\": {\"id\": 1}}";
+    }
+
+    private Long id(MvcResult result) throws Exception {
+        return objectMapper.readTree(result.getResponse().getContentAsString()).get("id").asLong();
+    }
+
+    private static String etag(MvcResult result) {
+        String etag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        return etag;
+    }
+}
@@ -0,0 +1,260 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// POST /films/bulk: результат по каждому фильму; POST /films/likes/bulk: сводка. Порции по два фильма и по две оценки
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:film-import;DB_CLOSE_DELAY=-1",
+        "spring.datasource.hikari.connection-init-sql=SET LOCK_TIMEOUT 200",
+        "filmorate.warmup.enabled=false",
+        "filmorate.films.bulk.chunk-size=2",
+        "filmorate.films.likes.bulk.chunk-size=2"
+})
+@AutoConfigureMockMvc
+class FilmImportTest {
+    // длительность больше, чем вмещает колонка "duration": фильм проходит проверку, но порция не сохраняется
+    private static final long UNSTORABLE_DURATION = 10_000_000_000L;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void ndjsonFilmsAreCreatedOrRejectedOneByOne() throws Exception {
+        String body = String.join("\n",
+                film("NDJSON 1", 90, "[{\"id\": 1}]"),
+                film("", 90, "[]"),
+                film("NDJSON 3", 90, "[{\"id\": 999}]"),
+                film("NDJSON 4", 90, "[{\"id\": 2}, {\"id\": 1}]"));
+
+        List<JsonNode> results = importFilms(MediaType.APPLICATION_NDJSON, body);
+
+        assertEquals(List.of("CREATED", "INVALID", "INVALID", "CREATED"), statuses(results));
+        assertEquals("Жанр с id = 999 не найден!", results.get(2).get("error").asText());
+        assertEquals(1, count("NDJSON 1"));
+        assertEquals(2, jdbc.queryForObject("select count(*) from \"films_genre\" where \"film_id\" = ?",
+                Integer.class, results.get(3).get("id").asLong()));
+    }
+
+    @Test
+    void jsonArrayIsImported() throws Exception {
+        String body = "[" + film("Массив 1", 90, "[]") + ", " + film("Массив 2", 90, "[]") + "]";
+
+        List<JsonNode> results = importFilms(MediaType.APPLICATION_JSON, body);
+
+        assertEquals(List.of("CREATED", "CREATED"), statuses(results));
+        assertEquals(1, count("Массив 2"));
+    }
+
+    // null в списке жанров или режиссеров отклоняет только этот фильм, остальные импортируются
+    @Test
+    void nullGenreOrDirectorIsInvalid() throws Exception {
+        String body = String.join("\n",
+                film("Пустой жанр", 90, "[null]"),
+                film("Пустой жанр", 90, "[]").replace("\"genres\"", "\"directors\": [null], \"genres\""),
+                film("После пустых", 90, "[]"));
+
+        List<JsonNode> results = importFilms(MediaType.APPLICATION_NDJSON, body);
+
+        assertEquals(List.of("INVALID", "INVALID", "CREATED"), statuses(results));
+        assertEquals("genres: элемент не должен равняться null", results.get(0).get("error").asText());
+        assertEquals("directors: элемент не должен равняться null", results.get(1).get("error").asText());
+        assertEquals(0, count("Пустой жанр"));
+    }
+
+    // порция сохраняется одной транзакцией: ошибка одного фильма откатывает и соседний
+    @Test
+    void failedChunkIsRolledBack() throws Exception {
+        String body = String.join("\n",
+                film("Порция 1", 90, "[]"),
+                film("Порция 2", 90, "[]"),
+                film("Порция 3", 90, "[]"),
+                film("Порция 4", UNSTORABLE_DURATION, "[]"),
+                film("Порция 5", 90, "[]"));
+
+        List<JsonNode> results = importFilms(MediaType.APPLICATION_NDJSON, body);
+
+        assertEquals(List.of("CREATED", "CREATED", "FAILED", "FAILED", "CREATED"), statuses(results));
+        assertTrue(results.get(2).get("error").asText().startsWith("Порция фильмов не сохранена"));
+        assertEquals(0, count("Порция 3"));
+        assertEquals(1, count("Порция 5"));
+    }
+
+    // после ошибки разбора импорт останавливается, разобранное до нее сохраняется
+    @Test
+    void malformedFilmStopsImport() throws Exception {
+        String body = film("До ошибки", 90, "[]") + "\n{\"name\": ";
+
+        List<JsonNode> results = importFilms(MediaType.APPLICATION_NDJSON, body);
+
+        assertEquals(List.of("CREATED", "FAILED"), statuses(results));
+        assertEquals(1, results.get(1).get("index").asInt());
+        assertEquals(1, count("До ошибки"));
+    }
+
+    @Test
+    void likesSummaryCountsEveryRow() throws Exception {
+        Long filmId = createFilm("Оценки");
+        Long user1Id = createUser("likes1");
+        Long user2Id = createUser("likes2");
+        String body = String.join("\n",
+                like(filmId, user1Id, 5),
+                like(filmId, user1Id, 7),
+                like(filmId, user2Id, 11),
+                like(filmId, 100_000L, 3),
+                "{\"filmId\": " + filmId + "}");
+
+        JsonNode summary = importLikes(body);
+
+        assertEquals(5, summary.get("received").asLong());
+        assertEquals(2, summary.get("invalid").asLong());
+        assertEquals(1, summary.get("duplicates").asLong());
+        assertEquals(1, summary.get("rejected").asLong());
+        assertEquals(1, summary.get("saved").asLong());
+        assertEquals(0, summary.get("failed").asLong());
+        assertEquals(7, mark(filmId, user1Id));
+    }
+
+    // порция, которую не удалось сохранить, откатывается и считается в failed, остальные порции сохраняются;
+    // последняя порция сохраняется так же, как и остальные, и ее ошибка не превращается в 500
+    @Test
+    void failedLikesChunkIsCountedAndImportContinues() throws Exception {
+        Long lockedFilmId = createFilm("Заблокирован");
+        Long filmId = createFilm("Свободен");
+        Long user1Id = createUser("chunk1");
+        Long user2Id = createUser("chunk2");
+        String body = String.join("\n",
+                like(lockedFilmId, user1Id, 5),
+                like(filmId, user1Id, 6),
+                like(filmId, user2Id, 8),
+                like(filmId, user1Id, 9),
+                like(lockedFilmId, user2Id, 4));
+
+        JsonNode summary;
+        // строка фильма заблокирована другой транзакцией дольше LOCK_TIMEOUT
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement lock = connection.prepareStatement(
+                    "select \"film_id\" from \"films\" where \"film_id\" = ? for update")) {
+                lock.setLong(1, lockedFilmId);
+                lock.executeQuery().close();
+                summary = importLikes(body);
+            } finally {
+                connection.rollback();
+            }
+        }
+
+        assertEquals(5, summary.get("received").asLong());
+        assertEquals(3, summary.get("failed").asLong());
+        assertEquals(2, summary.get("saved").asLong());
+        assertTrue(summary.get("error").asText().startsWith("Порция оценок не сохранена"));
+        assertNull(mark(lockedFilmId, user1Id));
+        assertEquals(9, mark(filmId, user1Id));
+        assertEquals(8, mark(filmId, user2Id));
+        assertNull(mark(lockedFilmId, user2Id));
+    }
+
+    @Test
+    void malformedLikeStopsImportButKeepsParsedRows() throws Exception {
+        Long filmId = createFilm("До ошибки разбора");
+        Long userId = createUser("parse");
+
+        JsonNode summary = importLikes(like(filmId, userId, 6) + "\n{\"filmId\": ");
+
+        assertEquals(1, summary.get("saved").asLong());
+        assertTrue(summary.get("error").asText().startsWith("Не удалось разобрать оценку"));
+        assertEquals(6, mark(filmId, userId));
+    }
+
+    private JsonNode importLikes(String body) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(post("/films/likes/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body.getBytes(StandardCharsets.UTF_8)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    private Long createFilm(String name) throws Exception {
+        return importFilms(MediaType.APPLICATION_NDJSON, film(name, 90, "[]")).getFirst().get("id").asLong();
+    }
+
+    private Long createUser(String login) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\": \"" + login + "@ya.ru\", \"login\": \"" + login
+                                + "\", \"birthday\": \"2000-01-01\"}"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString()).get("id").asLong();
+    }
+
+    private Integer mark(Long filmId, Long userId) {
+        return jdbc.query("select \"mark\" from \"likes\" where \"film_id\" = ? and \"user_id\" = ?",
+                rs -> rs.next() ? rs.getInt(1) : null, filmId, userId);
+    }
+
+    private static String like(Long filmId, Long userId, int mark) {
+        return "{\"filmId\": " + filmId + ", \"userId\": " + userId + ", \"mark\": " + mark + "}";
+    }
+
+    private List<JsonNode> importFilms(MediaType type, String body) throws Exception {
+        String response = mockMvc.perform(post("/films/bulk")
+                        .contentType(type)
+                        .content(body.getBytes(StandardCharsets.UTF_8)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(StandardCharsets.UTF_8);
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : response.split("\n")) {
+            results.add(objectMapper.readTree(line));
+        }
+        // ошибки проверки отдаются сразу, созданные фильмы - после фиксации порции; каждый фильм - один раз
+        results.sort(Comparator.comparingInt(result -> result.get("index").asInt()));
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).get("index").asInt());
+        }
+        return results;
+    }
+
+    private static List<String> statuses(List<JsonNode> results) {
+        return results.stream().map(result -> result.get("status").asText()).toList();
+    }
+
+    private int count(String name) {
+        return jdbc.queryForObject("select count(*) from \"films\" where \"name\" = ?", Integer.class, name);
+    }
+
+    private static String film(String name, long duration, String genres) {
+        return "{\"name\": \"" + name + "\", \"description\": \"Описание\", \"releaseDate\": \"2000-01-01\", "
+                + "\"duration\": " + duration + ", \"mpa\": {\"id\": 1}, \"genres\": " + genres + "}";
+    }
+}
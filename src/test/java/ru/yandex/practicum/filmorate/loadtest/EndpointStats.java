@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class EndpointStats {
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final LoadOperation operation;
+    private final Histogram histogram = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+    private final LongAdder errors = new LongAdder();
+
+    public EndpointStats(LoadOperation operation) {
+        this.operation = operation;
+    }
+
+    public void record(long latencyNanos, boolean success) {
+        histogram.recordValue(Math.min(latencyNanos, MAX_LATENCY_NANOS));
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    public void reset() {
+        histogram.reset();
+        errors.reset();
+    }
+
+    public long getCount() {
+        return histogram.getTotalCount();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public double percentileMillis(double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1_000_000.0;
+    }
+
+    public double throughput(long elapsedNanos) {
+        return getCount() * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    public String format(long elapsedNanos) {
+        return String.format("%-32s count=%8d errors=%6d rps=%9.1f p50=%8.2fms p90=%8.2fms p99=%8.2fms p99.9=%8.2fms max=%8.2fms",
+                operation.getEndpoint(),
+                getCount(),
+                getErrors(),
+                throughput(elapsedNanos),
+                percentileMillis(50),
+                percentileMillis(90),
+                percentileMillis(99),
+                percentileMillis(99.9),
+                histogram.getMaxValue() / 1_000_000.0);
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import ru.yandex.practicum.filmorate.datagen.DatasetGenerator;
+import ru.yandex.practicum.filmorate.datagen.DatasetProperties;
+import ru.yandex.practicum.filmorate.datagen.DatasetStats;
+
+import java.net.URI;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// mvn test -Pload-test [-Dloadtest.target=http://localhost:8080] [-Dloadtest.scale=10] [-Dloadtest.clients=256]
+@Slf4j
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+                "logging.level.org.zalando.logbook=INFO",
+                "logging.level.ru.yandex.practicum.filmorate=WARN"
+        })
+class FilmorateLoadTest {
+    @Autowired
+    private DatasetGenerator datasetGenerator;
+    @Autowired
+    private DatasetProperties datasetProperties;
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void popularAndSearchLatencyWithinGate() throws InterruptedException {
+        datasetProperties.setSeed(Long.getLong("loadtest.seed", 42L));
+        datasetProperties.setScale(Double.parseDouble(System.getProperty("loadtest.scale", "1")));
+        String externalTarget = System.getProperty("loadtest.target");
+        URI target = URI.create(externalTarget == null ? "http://localhost:" + port : externalTarget);
+        // внешнее приложение должно быть заранее заполнено профилем datagen с теми же seed и scale
+        DatasetStats dataset = externalTarget == null
+                ? datasetGenerator.generate(datasetProperties)
+                : expectedDataset();
+        LoadTestRunner runner = new LoadTestRunner(
+                target,
+                LoadMix.parse(System.getProperty("loadtest.mix",
+                        "popular=35,search=35,like=20,friends=5,feed=5")),
+                dataset,
+                Integer.getInteger("loadtest.clients", 64),
+                datasetProperties.getSeed());
+        LoadTestResult result = runner.run(
+                Duration.parse(System.getProperty("loadtest.warmup", "PT5S")),
+                Duration.parse(System.getProperty("loadtest.duration", "PT20S")));
+        log.warn("Результаты нагрузочного теста ({}):\n{}", target, result.report());
+
+        double popularGate = Double.parseDouble(System.getProperty("loadtest.gate.popular-p99-ms", "1000"));
+        double searchGate = Double.parseDouble(System.getProperty("loadtest.gate.search-p99-ms", "1000"));
+        EndpointStats popular = result.get(LoadOperation.POPULAR);
+        EndpointStats search = result.get(LoadOperation.SEARCH);
+        assertAll(
+                () -> assertTrue(popular.getCount() == 0 || popular.percentileMillis(99) <= popularGate,
+                        "p99 /films/popular = " + popular.percentileMillis(99) + " мс, порог " + popularGate + " мс"),
+                () -> assertTrue(search.getCount() == 0 || search.percentileMillis(99) <= searchGate,
+                        "p99 /films/search = " + search.percentileMillis(99) + " мс, порог " + searchGate + " мс"),
+                () -> assertTrue(popular.getErrors() + search.getErrors() == 0,
+                        "Ошибки на /films/popular и /films/search недопустимы")
+        );
+    }
+
+    private DatasetStats expectedDataset() {
+        DatasetStats dataset = new DatasetStats();
+        dataset.setUsers(datasetProperties.scaled(datasetProperties.getUsers()));
+        dataset.setFilms(datasetProperties.scaled(datasetProperties.getFilms()));
+        return dataset;
+    }
+}
@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+// формат: "popular=35,search=35,like=20,friends=5,feed=5"
+public class LoadMix {
+    private final LoadOperation[] operations;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+
+    private LoadMix(Map<LoadOperation, Integer> weights) {
+        operations = new LoadOperation[weights.size()];
+        cumulativeWeights = new int[weights.size()];
+        int sum = 0;
+        int idx = 0;
+        for (Map.Entry<LoadOperation, Integer> entry : weights.entrySet()) {
+            sum += entry.getValue();
+            operations[idx] = entry.getKey();
+            cumulativeWeights[idx] = sum;
+            idx++;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("Сумма весов нагрузочного профиля должна быть больше 0");
+        }
+        totalWeight = sum;
+    }
+
+    public static LoadMix parse(String mix) {
+        Map<LoadOperation, Integer> weights = new EnumMap<>(LoadOperation.class);
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Некорректный элемент нагрузочного профиля: " + part);
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                weights.put(LoadOperation.valueOf(pair[0].trim().toUpperCase()), weight);
+            }
+        }
+        return new LoadMix(weights);
+    }
+
+    public LoadOperation next(RandomGenerator random) {
+        int point = random.nextInt(totalWeight);
+        for (int idx = 0; idx < cumulativeWeights.length; idx++) {
+            if (point < cumulativeWeights[idx]) {
+                return operations[idx];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+}
@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+public enum LoadOperation {
+    POPULAR("GET /films/popular"),
+    SEARCH("GET /films/search"),
+    FILM("GET /films/{id}"),
+    LIKE("PUT /films/{id}/like/{userId}"),
+    FRIENDS("GET /users/{id}/friends"),
+    FEED("GET /users/{id}/feed"),
+    REVIEWS("GET /reviews");
+
+    private final String endpoint;
+
+    LoadOperation(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+}
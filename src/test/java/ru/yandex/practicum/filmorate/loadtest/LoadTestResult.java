@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class LoadTestResult {
+    private final Map<LoadOperation, EndpointStats> stats;
+    private final long elapsedNanos;
+
+    public LoadTestResult(Map<LoadOperation, EndpointStats> stats, long elapsedNanos) {
+        this.stats = stats;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public EndpointStats get(LoadOperation operation) {
+        return stats.get(operation);
+    }
+
+    public String report() {
+        long total = stats.values().stream()
+                .mapToLong(EndpointStats::getCount)
+                .sum();
+        return stats.values().stream()
+                .filter(endpoint -> endpoint.getCount() > 0)
+                .map(endpoint -> endpoint.format(elapsedNanos))
+                .collect(Collectors.joining("\n",
+                        String.format("Всего запросов: %d, пропускная способность: %.1f rps%n",
+                                total, total * 1_000_000_000.0 / elapsedNanos),
+                        ""));
+    }
+}
@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.datagen.DatasetStats;
+import ru.yandex.practicum.filmorate.datagen.ZipfSampler;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// замкнутый цикл: каждый клиент отправляет следующий запрос только после ответа на предыдущий
+@Slf4j
+public class LoadTestRunner {
+    private final URI baseUri;
+    private final LoadMix mix;
+    private final DatasetStats dataset;
+    private final int clients;
+    private final long seed;
+    private final Map<LoadOperation, EndpointStats> stats = new EnumMap<>(LoadOperation.class);
+    private final ZipfSampler filmPopularity;
+    private final HttpClient httpClient;
+    private volatile boolean recording;
+
+    public LoadTestRunner(URI baseUri, LoadMix mix, DatasetStats dataset, int clients, long seed) {
+        this.baseUri = baseUri;
+        this.mix = mix;
+        this.dataset = dataset;
+        this.clients = clients;
+        this.seed = seed;
+        for (LoadOperation operation : LoadOperation.values()) {
+            stats.put(operation, new EndpointStats(operation));
+        }
+        filmPopularity = new ZipfSampler((int) dataset.getFilms(), 1.1, new SplittableRandom(seed));
+        httpClient = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public LoadTestResult run(Duration warmup, Duration duration) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(seed);
+        long warmupEnd = System.nanoTime() + warmup.toNanos();
+        long end = warmupEnd + duration.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < clients; client++) {
+                SplittableRandom clientRandom = random.split();
+                executor.submit(() -> runClient(clientRandom, end));
+            }
+            Thread.sleep(warmup.toMillis());
+            stats.values().forEach(EndpointStats::reset);
+            recording = true;
+            log.info("Прогрев завершен, идет замер {} клиентами в течение {}", clients, duration);
+        }
+        long elapsed = System.nanoTime() - warmupEnd;
+        recording = false;
+        return new LoadTestResult(stats, elapsed);
+    }
+
+    private void runClient(SplittableRandom random, long end) {
+        while (System.nanoTime() < end) {
+            LoadOperation operation = mix.next(random);
+            HttpRequest request = buildRequest(operation, random);
+            long start = System.nanoTime();
+            boolean success;
+            try {
+                HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                success = response.statusCode() / 100 == 2;
+            } catch (Exception e) {
+                success = false;
+            }
+            long latency = System.nanoTime() - start;
+            if (recording) {
+                stats.get(operation).record(latency, success);
+            }
+        }
+    }
+
+    private HttpRequest buildRequest(LoadOperation operation, SplittableRandom random) {
+        long filmId = filmPopularity.next(random);
+        long userId = 1 + random.nextLong(dataset.getUsers());
+        return switch (operation) {
+            case POPULAR -> get(random.nextInt(4) == 0
+                    ? "/films/popular?count=10&genreId=" + (1 + random.nextInt(6))
+                    : "/films/popular?count=10");
+            case SEARCH -> get("/films/search?by=title,director&query=" + (1 + random.nextLong(dataset.getFilms())));
+            case FILM -> get("/films/" + filmId);
+            case LIKE -> HttpRequest.newBuilder(baseUri.resolve(
+                            "/films/" + filmId + "/like/" + userId + "?mark=" + random.nextInt(11)))
+                    .PUT(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            case FRIENDS -> get("/users/" + userId + "/friends");
+            case FEED -> get("/users/" + userId + "/feed");
+            case REVIEWS -> get("/reviews?count=10&filmId=" + filmId);
+        };
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).GET().build();
+    }
+}
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.test.context.ContextConfiguration;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.cache.FilmQueryCache;
+import ru.yandex.practicum.filmorate.cache.UserLikesCache;
+import ru.yandex.practicum.filmorate.config.ExecutorConfig;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.*;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Оценки пользователя: страницы по курсору и общие с другом фильмы из кэша множеств оценок (UserLikesCache)
+@JdbcTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@ContextConfiguration(classes = {FilmService.class,
+        ExecutorConfig.class,
+        FilmCache.class,
+        FilmQueryCache.class,
+        UserLikesCache.class,
+        LikeWriteBuffer.class,
+        TrendingFilms.class,
+        RequestCoalescer.class,
+        CoalescingProperties.class,
+        EntityVersions.class,
+        FilmDbStorage.class,
+        FilmRatingDbStorage.class,
+        FilmLocks.class,
+        FilmLikeDbStorage.class,
+        FilmGenreDBStorage.class,
+        FilmDirectorDBStorage.class,
+        GenreDbStorage.class,
+        MpaDbStorage.class,
+        DirectorDbStorage.class,
+        UserDbStorage.class,
+        FriendDbStorage.class,
+        UserFeedDBStorage.class})
+@ComponentScan(basePackages = {"ru.yandex.practicum.filmorate.storage.mapper"})
+class FilmServiceUserLikesTest {
+    private final FilmService filmService;
+    private final FilmDbStorage filmDbStorage;
+    private final UserDbStorage userDbStorage;
+
+    @Test
+    void getCommonFilmsSortedByRating() {
+        Long film1Id = createFilm(1);
+        Long film2Id = createFilm(2);
+        Long film3Id = createFilm(3);
+        Long user1Id = createUser(1);
+        Long user2Id = createUser(2);
+        filmService.addLike(film1Id, user1Id, 4);
+        filmService.addLike(film3Id, user1Id, 5);
+        // множество первого пользователя уже загружено, дальше оно только поддерживается
+        assertEquals(List.of(), filmService.getCommonFilms(user1Id, user2Id));
+        filmService.addLike(film2Id, user1Id, 9);
+        filmService.addLike(film1Id, user2Id, 6);
+        filmService.addLike(film2Id, user2Id, 7);
+
+        assertEquals(List.of(film2Id, film1Id), filmService.getCommonFilms(user1Id, user2Id).stream()
+                .map(Film::getId)
+                .toList());
+
+        filmService.deleteLike(film2Id, user1Id);
+        assertEquals(List.of(film1Id), filmService.getCommonFilms(user2Id, user1Id).stream()
+                .map(Film::getId)
+                .toList());
+    }
+
+    @Test
+    void findLikesOfUserPagesWithCursor() {
+        Long film1Id = createFilm(1);
+        Long film2Id = createFilm(2);
+        Long film3Id = createFilm(3);
+        Long userId = createUser(1);
+        filmService.addLike(film3Id, userId, 7);
+        filmService.addLike(film1Id, userId, 4);
+        filmService.addLike(film2Id, userId, 9);
+
+        UserLikePage first = filmService.findLikesOfUser(userId, null, 2);
+        assertEquals(List.of(new UserLike(film1Id, 4), new UserLike(film2Id, 9)), first.getLikes());
+        UserLikePage second = filmService.findLikesOfUser(userId, first.getNext(), 2);
+        assertEquals(List.of(new UserLike(film3Id, 7)), second.getLikes());
+        assertNull(second.getNext());
+        assertThrows(ValidationException.class, () -> filmService.findLikesOfUser(userId, "не курсор", 2));
+    }
+
+    private Long createFilm(int n) {
+        return filmDbStorage.create(Film.builder()
+                .name("Фильм №" + n)
+                .description("Описание фильма №" + n)
+                .releaseDate(LocalDate.of(2000, 1, n))
+                .duration(Duration.ofMinutes(90))
+                .mpa(new Mpa(1, "G"))
+                .build()).getId();
+    }
+
+    private Long createUser(int n) {
+        return userDbStorage.create(User.builder()
+                .name("User " + n)
+                .email("user" + n + "@ya.ru")
+                .login("userLogin" + n)
+                .birthday(LocalDate.of(2000, 2, 20))
+                .build()).getId();
+    }
+}
@@ -0,0 +1,289 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.cache.FilmQueryCache;
+import ru.yandex.practicum.filmorate.cache.UserLikesCache;
+import ru.yandex.practicum.filmorate.config.ExecutorConfig;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.*;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Оценки пишутся и сбрасываются из разных потоков, поэтому тест выполняется без общей тестовой транзакции
+@JdbcTest
+@AutoConfigureTestDatabase
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@ContextConfiguration(classes = {FilmDbStorage.class,
+        ExecutorConfig.class,
+        FilmCache.class,
+        FilmQueryCache.class,
+        UserLikesCache.class,
+        FilmRatingDbStorage.class,
+        FilmLikeDbStorage.class,
+        FilmLocks.class,
+        UserDbStorage.class,
+        FriendDbStorage.class,
+        DirectorDbStorage.class,
+        EntityVersions.class})
+@ComponentScan(basePackages = {"ru.yandex.practicum.filmorate.storage.mapper"})
+class LikeWriteBufferTest {
+    private static final int VOTERS = 8;
+    private static final int VOTES = 200;
+
+    private final FilmDbStorage filmDbStorage;
+    private final FilmRatingDbStorage filmRatingDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final FilmLikeDbStorage filmLikeDbStorage;
+    private final FilmCache filmCache;
+    private final FilmQueryCache filmQueryCache;
+    private final UserLikesCache userLikesCache;
+    private final EntityVersions versions;
+    private final ObjectProvider<MeterRegistry> registryProvider;
+
+    @TempDir
+    private Path walDir;
+    private final List<LikeWriteBuffer> started = new ArrayList<>();
+    private Long filmId;
+    private List<Long> usersId;
+
+    @BeforeEach
+    void createFilmAndUsers() {
+        filmId = createFilm();
+        long run = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+        usersId = IntStream.range(0, VOTERS)
+                .mapToObj(i -> userDbStorage.create(User.builder()
+                        .name("User " + i)
+                        .email("buffer" + run + "-" + i + "@ya.ru")
+                        .login("buffer" + run + "-" + i)
+                        .birthday(LocalDate.of(2000, 1, 1))
+                        .build()).getId())
+                .toList();
+    }
+
+    @AfterEach
+    void stopBuffers() {
+        started.forEach(LikeWriteBuffer::stop);
+    }
+
+    @Test
+    void ratingOverlaysPendingMarksOnSavedSummary() {
+        filmRatingDbStorage.addMark(filmId, usersId.get(0), 4);
+        filmRatingDbStorage.addMark(filmId, usersId.get(1), 6);
+        LikeWriteBuffer buffer = start(likeWriteBuffer(walDir));
+
+        buffer.put(filmId, usersId.get(0), null);
+        buffer.put(filmId, usersId.get(1), 10);
+        buffer.put(filmId, usersId.get(2), 7);
+
+        assertTrue(buffer.hasPending(filmId));
+        FilmRating overlaid = buffer.rating(filmId);
+        assertEquals(2, overlaid.getCount());
+        assertEquals(8.5, overlaid.getAverage());
+        assertEquals(0, overlaid.getHistogram()[4]);
+        assertEquals(0, overlaid.getHistogram()[6]);
+        assertEquals(5.0, filmRatingDbStorage.findByFilmId(filmId).getAverage());
+
+        buffer.flush();
+        assertFalse(buffer.hasPending(filmId));
+        assertEquals(8.5, filmRatingDbStorage.findByFilmId(filmId).getAverage());
+        assertEquals(8.5, buffer.rating(filmId).getAverage());
+    }
+
+    // ETag фильма меняется уже при записи в буфер: чтение, взявшее ETag до сброса, не подтвердит старый ответ
+    @Test
+    void putChangesFilmVersionBeforeFlush() {
+        LikeWriteBuffer buffer = start(likeWriteBuffer(walDir));
+        String before = versions.etag(EntityVersions.Type.FILM, filmId);
+        String beforeList = versions.etag(EntityVersions.Type.FILM);
+
+        buffer.put(filmId, usersId.getFirst(), 9);
+        String afterPut = versions.etag(EntityVersions.Type.FILM, filmId);
+        assertNotEquals(before, afterPut);
+        assertNotEquals(beforeList, versions.etag(EntityVersions.Type.FILM));
+
+        buffer.flush();
+        assertNotEquals(afterPut, versions.etag(EntityVersions.Type.FILM, filmId));
+    }
+
+    // множество фильмов пользователя, загруженное из БД до сброса его оценки, после сброса перечитывается
+    @Test
+    void flushRefreshesUserLikes() {
+        LikeWriteBuffer buffer = start(likeWriteBuffer(walDir));
+        Long user1Id = usersId.get(0);
+        Long user2Id = usersId.get(1);
+        filmRatingDbStorage.addMark(filmId, user2Id, 5);
+
+        buffer.put(filmId, user1Id, 8);
+        userLikesCache.get(user1Id);
+        buffer.flush();
+        assertArrayEquals(new long[]{filmId}, userLikesCache.common(user1Id, user2Id));
+
+        buffer.put(filmId, user2Id, null);
+        userLikesCache.get(user2Id);
+        buffer.flush();
+        assertArrayEquals(new long[0], userLikesCache.common(user1Id, user2Id));
+    }
+
+    // страница оценок пользователя накладывает только его несохраненные оценки и ничего не сбрасывает
+    @Test
+    void userLikesOverlayPendingMarksWithoutFlush() {
+        LikeWriteBuffer buffer = start(likeWriteBuffer(walDir));
+        Long userId = usersId.getFirst();
+        Long otherId = usersId.getLast();
+        List<Long> filmsId = new ArrayList<>(List.of(filmId));
+        for (int i = 0; i < 3; i++) {
+            filmsId.add(createFilm());
+        }
+        filmRatingDbStorage.addMark(filmsId.get(0), userId, 1);
+        filmRatingDbStorage.addMark(filmsId.get(1), userId, 2);
+        filmRatingDbStorage.addMark(filmsId.get(3), userId, 4);
+
+        buffer.put(filmsId.get(0), userId, null);
+        buffer.put(filmsId.get(1), userId, 9);
+        buffer.put(filmsId.get(2), userId, 3);
+        buffer.put(filmsId.get(3), otherId, 5);
+
+        UserLikePage first = filmLikeDbStorage.findLikesOfUser(userId, null, 2, buffer.marksOfUser(userId));
+        assertEquals(List.of(new UserLike(filmsId.get(1), 9), new UserLike(filmsId.get(2), 3)), first.getLikes());
+        UserLikePage second = filmLikeDbStorage.findLikesOfUser(userId, first.getNext(), 2,
+                buffer.marksOfUser(userId));
+        assertEquals(List.of(new UserLike(filmsId.get(3), 4)), second.getLikes());
+        assertNull(second.getNext());
+        assertTrue(buffer.hasPending(filmsId.get(0)));
+        assertTrue(buffer.hasPending(filmsId.get(3)));
+    }
+
+    // пока пользователи голосуют, буфер сбрасывается параллельно; в итоге в БД последняя оценка каждого
+    @Test
+    void concurrentPutsAndFlushesKeepLastMarkOfEveryUser() throws Exception {
+        LikeWriteBuffer buffer = start(likeWriteBuffer(walDir));
+        CountDownLatch startLine = new CountDownLatch(1);
+        AtomicBoolean voting = new AtomicBoolean(true);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> flusher = executor.submit(() -> {
+                startLine.await();
+                while (voting.get()) {
+                    buffer.flush();
+                    // на одном ядре сброс пустого буфера без уступки не дал бы голосующим потокам выполниться
+                    Thread.yield();
+                }
+                return null;
+            });
+            List<Future<?>> voters = new ArrayList<>();
+            for (int i = 0; i < VOTERS; i++) {
+                Long userId = usersId.get(i);
+                int last = i;
+                voters.add(executor.submit(() -> {
+                    startLine.await();
+                    for (int vote = 0; vote < VOTES; vote++) {
+                        buffer.put(filmId, userId, vote % 3 == 0 ? null : vote % FilmRating.MARKS);
+                        // промежуточная сводка согласована: каждый пользователь учтен не больше одного раза
+                        assertTrue(buffer.rating(filmId).getCount() <= VOTERS);
+                    }
+                    buffer.put(filmId, userId, last);
+                    return null;
+                }));
+            }
+            startLine.countDown();
+            // упавший голосующий останавливает и сброс, иначе тест зависнет вместо ошибки
+            try {
+                for (Future<?> voter : voters) {
+                    voter.get(30, TimeUnit.SECONDS);
+                }
+            } finally {
+                voting.set(false);
+            }
+            flusher.get(30, TimeUnit.SECONDS);
+        }
+        buffer.flush();
+
+        assertFalse(buffer.hasPending(filmId));
+        FilmRating saved = filmRatingDbStorage.findByFilmId(filmId);
+        assertEquals(VOTERS, saved.getCount());
+        assertEquals(IntStream.range(0, VOTERS).sum(), saved.getSum());
+        for (int mark = 0; mark < VOTERS; mark++) {
+            assertEquals(1, saved.getHistogram()[mark]);
+        }
+    }
+
+    @Test
+    void recoversFromWal() {
+        Long user1Id = usersId.get(0);
+        Long user2Id = usersId.get(1);
+
+        // первый буфер не останавливается и ничего не сбрасывает - как упавший процесс
+        LikeWriteBuffer crashed = likeWriteBuffer(walDir);
+        crashed.start();
+        crashed.put(filmId, user1Id, 4);
+        crashed.put(filmId, user2Id, 8);
+        crashed.put(filmId, user2Id, 6);
+
+        assertEquals(0, filmRatingDbStorage.findByFilmId(filmId).getCount());
+        FilmRating buffered = crashed.rating(filmId);
+        assertEquals(2, buffered.getCount());
+        assertEquals(5.0, buffered.getAverage());
+
+        LikeWriteBuffer recovered = likeWriteBuffer(walDir);
+        recovered.start();
+        assertFalse(recovered.hasPending(filmId));
+        FilmRating saved = filmRatingDbStorage.findByFilmId(filmId);
+        assertEquals(2, saved.getCount());
+        assertEquals(5.0, saved.getAverage());
+
+        recovered.put(filmId, user1Id, null);
+        recovered.flush();
+        recovered.stop();
+        assertEquals(6.0, filmRatingDbStorage.findByFilmId(filmId).getAverage());
+    }
+
+    private Long createFilm() {
+        return filmDbStorage.create(Film.builder()
+                .name("Фильм")
+                .description("Описание")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(Duration.ofMinutes(90))
+                .mpa(new Mpa(1, "G"))
+                .build()).getId();
+    }
+
+    private LikeWriteBuffer start(LikeWriteBuffer buffer) {
+        buffer.start();
+        started.add(buffer);
+        return buffer;
+    }
+
+    // фоновый сброс раз в час не мешает тесту, сбросы вызываются явно
+    private LikeWriteBuffer likeWriteBuffer(Path walDir) {
+        return new LikeWriteBuffer(filmRatingDbStorage, filmCache, filmQueryCache, userLikesCache, versions,
+                registryProvider, true, 4, Duration.ofHours(1), 1000, 100, walDir, Duration.ZERO);
+    }
+}
@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+    private static final int CALLERS = 8;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final RequestCoalescer coalescer = new RequestCoalescer(new CoalescingProperties(),
+            new StaticListableBeanFactory(Map.of("registry", registry)).getBeanProvider(MeterRegistry.class));
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger executions = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void closeExecutor() {
+        release.countDown();
+        executor.close();
+    }
+
+    @Test
+    void concurrentIdenticalReadsShareOneExecution() throws Exception {
+        List<Future<Object>> results = submitAll(() -> {
+            executions.incrementAndGet();
+            await(release);
+            return new Object();
+        });
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        Object shared = results.getFirst().get(5, TimeUnit.SECONDS);
+        for (Future<Object> result : results) {
+            assertSame(shared, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+
+        // результат не кэшируется: следующий вызов выполняется заново
+        coalescer.execute("test", executions::incrementAndGet, 1L);
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void exceptionReachesEveryWaiter() throws Exception {
+        IllegalStateException failure = new IllegalStateException("отказ БД");
+        List<Future<Object>> results = submitAll(() -> {
+            executions.incrementAndGet();
+            await(release);
+            throw failure;
+        });
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<Object> result : results) {
+            ExecutionException thrown = assertThrows(ExecutionException.class,
+                    () -> result.get(5, TimeUnit.SECONDS));
+            assertSame(failure, thrown.getCause());
+        }
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void differentArgumentsAreNotCoalesced() {
+        coalescer.execute("test", executions::incrementAndGet, 1L);
+        coalescer.execute("test", executions::incrementAndGet, 2L);
+        coalescer.execute("test", executions::incrementAndGet, (Object) null);
+
+        assertEquals(3, executions.get());
+    }
+
+    private List<Future<Object>> submitAll(Supplier<Object> action) {
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> coalescer.execute("test", action, 1L)));
+        }
+        return results;
+    }
+
+    // остальные вызовы присоединились к первому, пока он ждет release
+    private void awaitCoalesced(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalesced() < expected) {
+            assertTrue(System.nanoTime() < deadline, "Присоединилось вызовов: " + coalesced());
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private double coalesced() {
+        Counter counter = registry.find("filmorate.coalescing.calls").tag("result", "coalesced").counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
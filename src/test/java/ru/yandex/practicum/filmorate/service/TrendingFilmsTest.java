@@ -0,0 +1,172 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.test.context.ContextConfiguration;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.cache.FilmQueryCache;
+import ru.yandex.practicum.filmorate.cache.UserLikesCache;
+import ru.yandex.practicum.filmorate.config.ExecutorConfig;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@ContextConfiguration(classes = {FilmService.class,
+        ExecutorConfig.class,
+        FilmCache.class,
+        FilmQueryCache.class,
+        UserLikesCache.class,
+        LikeWriteBuffer.class,
+        TrendingFilms.class,
+        RequestCoalescer.class,
+        CoalescingProperties.class,
+        EntityVersions.class,
+        FilmDbStorage.class,
+        FilmRatingDbStorage.class,
+        FilmLocks.class,
+        FilmLikeDbStorage.class,
+        FilmGenreDBStorage.class,
+        FilmDirectorDBStorage.class,
+        GenreDbStorage.class,
+        MpaDbStorage.class,
+        DirectorDbStorage.class,
+        UserDbStorage.class,
+        FriendDbStorage.class,
+        UserFeedDBStorage.class})
+@ComponentScan(basePackages = {"ru.yandex.practicum.filmorate.storage.mapper"})
+class TrendingFilmsTest {
+    private final FilmService filmService;
+    private final FilmDbStorage filmDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final FilmLikeDbStorage filmLikeDbStorage;
+    private final FilmRatingDbStorage filmRatingDbStorage;
+
+    @Test
+    void trendingFilmsCountVotesInWindow() {
+        Long film1Id = createFilm(1);
+        Long film2Id = createFilm(2);
+        Long film3Id = createFilm(3);
+        Long user1Id = createUser(1);
+        Long user2Id = createUser(2);
+        filmService.addLike(film3Id, user1Id, 9);
+        filmService.addLike(film2Id, user1Id, 5);
+        filmService.addLike(film2Id, user2Id, 5);
+
+        assertEquals(List.of(film2Id, film3Id), filmService.getTrending("1h", 10, false).stream()
+                .map(Film::getId)
+                .toList());
+        assertThrows(ValidationException.class, () -> filmService.getTrending("2h", 10, false));
+
+        // после перезапуска счетчики восстанавливаются по времени оценок в БД
+        TrendingFilms restored = trendingFilms();
+        restored.start();
+        assertEquals(List.of(film2Id), restored.top(Duration.ofHours(1), 1, false));
+
+        // три оценки два часа назад выходят из часового окна, а с затуханием весят меньше одной свежей
+        TrendingFilms trending = trendingFilms();
+        Instant now = Instant.now();
+        for (long i = 0; i < 3; i++) {
+            trending.record(film1Id, i, now.minus(Duration.ofHours(2)));
+        }
+        trending.record(film2Id, 0L, now.minus(Duration.ofMinutes(10)));
+        assertEquals(List.of(film2Id), trending.top(Duration.ofHours(1), 10, false));
+        assertEquals(List.of(film1Id, film2Id), trending.top(Duration.ofHours(24), 10, false));
+        assertEquals(List.of(film2Id, film1Id), trending.top(Duration.ofHours(24), 10, true));
+    }
+
+    // пользователь учитывается один раз по последней оценке, удаленная оценка вычитается;
+    // после перезапуска счетчики те же, что и до него
+    @Test
+    void revoteAndUnlikeAreCountedOnceLiveAndOnRestore() {
+        Long film1Id = createFilm(1);
+        Long film2Id = createFilm(2);
+        Long user1Id = createUser(1);
+        Long user2Id = createUser(2);
+        Long user3Id = createUser(3);
+        filmService.addLike(film1Id, user1Id, 9);
+        filmService.addLike(film1Id, user1Id, 7);
+        filmService.addLike(film1Id, user1Id, 8);
+        filmService.addLike(film2Id, user2Id, 5);
+        filmService.addLike(film2Id, user3Id, 5);
+        filmService.addLike(film1Id, user2Id, 6);
+        filmService.deleteLike(film1Id, user2Id);
+
+        assertEquals(List.of(film2Id, film1Id), trendingIds(film1Id, film2Id));
+        TrendingFilms restored = trendingFilms();
+        restored.start();
+        assertEquals(List.of(film2Id, film1Id), restored.top(Duration.ofHours(1), 100, false).stream()
+                .filter(List.of(film1Id, film2Id)::contains)
+                .toList());
+
+        filmService.deleteLike(film2Id, user2Id);
+        filmService.deleteLike(film2Id, user3Id);
+        assertEquals(List.of(film1Id), trendingIds(film1Id, film2Id));
+
+        // оценка заменяет прежнюю и в прошлом: голос уходит из часового окна, но остается в суточном
+        TrendingFilms trending = trendingFilms();
+        trending.record(film1Id, user1Id, Instant.now());
+        trending.record(film1Id, user1Id, Instant.now().minus(Duration.ofHours(2)));
+        assertEquals(List.of(), trending.top(Duration.ofHours(1), 10, false));
+        assertEquals(List.of(film1Id), trending.top(Duration.ofHours(24), 10, false));
+        trending.removeUser(user1Id);
+        assertEquals(List.of(), trending.top(Duration.ofHours(24), 10, false));
+    }
+
+    // оценки без времени - поставленные до появления колонки или импортированные - в окна не попадают
+    @Test
+    void likesWithoutTimeAreNotRestored() {
+        Long filmId = createFilm(1);
+        Long userId = createUser(1);
+        filmRatingDbStorage.addMarks(List.of(new FilmLike(filmId, userId, 7)));
+
+        TrendingFilms restored = trendingFilms();
+        restored.start();
+        assertFalse(restored.top(Duration.ofHours(24), 100, false).contains(filmId));
+    }
+
+    // фильмы и оценки других тестов этого класса тоже попадают в выборку, сравнивается только порядок своих
+    private List<Long> trendingIds(Long... filmsId) {
+        return filmService.getTrending("1h", 100, false).stream()
+                .map(Film::getId)
+                .filter(List.of(filmsId)::contains)
+                .toList();
+    }
+
+    private TrendingFilms trendingFilms() {
+        return new TrendingFilms(filmLikeDbStorage, List.of(Duration.ofHours(1), Duration.ofHours(24)),
+                Duration.ofHours(1));
+    }
+
+    private Long createFilm(int n) {
+        return filmDbStorage.create(Film.builder()
+                .name("Фильм №" + n)
+                .description("Описание фильма №" + n)
+                .releaseDate(LocalDate.of(2000, 1, n))
+                .duration(Duration.ofMinutes(90))
+                .mpa(new Mpa(1, "G"))
+                .build()).getId();
+    }
+
+    private Long createUser(int n) {
+        return userDbStorage.create(User.builder()
+                .name("User " + n)
+                .email("user" + n + "@ya.ru")
+                .login("userLogin" + n)
+                .birthday(LocalDate.of(2000, 2, 20))
+                .build()).getId();
+    }
+}
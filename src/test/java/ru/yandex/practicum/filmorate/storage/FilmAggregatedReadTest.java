@@ -0,0 +1,112 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import ru.yandex.practicum.filmorate.model.*;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Каждый запрос фильмов в режиме aggregated возвращает жанры и режиссеров тем же запросом
+@JdbcTest
+@AutoConfigureTestDatabase
+@TestPropertySource(properties = "filmorate.films.read-mode=aggregated")
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@ContextConfiguration(classes = {FilmDbStorage.class,
+        FilmRatingDbStorage.class,
+        FilmLocks.class,
+        UserDbStorage.class,
+        FriendDbStorage.class,
+        DirectorDbStorage.class})
+@ComponentScan(basePackages = {"ru.yandex.practicum.filmorate.storage.mapper"})
+class FilmAggregatedReadTest {
+    private final FilmDbStorage filmDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final DirectorDbStorage directorDbStorage;
+
+    private Film film;
+    private Long userId;
+
+    @BeforeEach
+    void createFilm() {
+        Director director = directorDbStorage.addDirector(new Director(null, "Режиссер"));
+        film = filmDbStorage.create(Film.builder()
+                .name("Фильм")
+                .description("Описание")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(Duration.ofMinutes(90))
+                .mpa(new Mpa(1, "G"))
+                .genres(List.of(new Genre(2, null), new Genre(1, null)))
+                .directors(List.of(director))
+                .build());
+        Film other = filmDbStorage.create(Film.builder()
+                .name("Другой")
+                .description("Описание")
+                .releaseDate(LocalDate.of(2001, 1, 1))
+                .duration(Duration.ofMinutes(90))
+                .mpa(new Mpa(1, "G"))
+                .build());
+        userId = userDbStorage.create(user(1)).getId();
+        Long otherUserId = userDbStorage.create(user(2)).getId();
+        filmDbStorage.addLike(other.getId(), userId, 8);
+        filmDbStorage.addLike(other.getId(), otherUserId, 8);
+        filmDbStorage.addLike(film.getId(), otherUserId, 9);
+    }
+
+    @Test
+    void everyFilmQueryReturnsGenresAndDirectors() {
+        Long directorId = film.getDirectors().iterator().next().getId();
+        List<Collection<Film>> results = List.of(
+                filmDbStorage.findAll(),
+                List.of(filmDbStorage.findById(film.getId())),
+                filmDbStorage.getPopular(10L, 0L, 0, RankType.AVG),
+                filmDbStorage.getPopular(10L, 1L, 0, RankType.BAYES),
+                filmDbStorage.getPopular(10L, 0L, 2000, RankType.WILSON),
+                filmDbStorage.getPopular(10L, 2L, 2000, RankType.AVG),
+                filmDbStorage.searchFilms("фильм", SearchType.TITLE),
+                filmDbStorage.searchFilms("режис", SearchType.DIRECTOR),
+                filmDbStorage.searchFilms("режис", SearchType.TITLE_AND_DIRECTOR),
+                filmDbStorage.getFilmsByDirector(directorId, "year", RankType.AVG, null, 10).getFilms(),
+                filmDbStorage.getFilmsByDirector(directorId, "likes", RankType.WILSON, null, 10).getFilms(),
+                filmDbStorage.getRecommendedFilmsForUser(userId),
+                filmDbStorage.findByIdsSortedByRating(List.of(film.getId())));
+
+        for (Collection<Film> films : results) {
+            Film found = films.stream()
+                    .filter(f -> f.getId().equals(film.getId()))
+                    .findFirst()
+                    .orElseThrow(() -> new AssertionError("Фильм не найден: " + films));
+            assertEquals(List.of(1, 2), found.getGenres().stream().map(Genre::getId).toList());
+            assertEquals(List.of("Комедия", "Драма"), found.getGenres().stream().map(Genre::getName).toList());
+            assertEquals(List.of(new Director(directorId, "Режиссер")), List.copyOf(found.getDirectors()));
+            assertEquals(9.0, found.getRating().getAverage());
+        }
+    }
+
+    @Test
+    void filmWithoutLinksHasEmptyGenresAndDirectors() {
+        Film other = filmDbStorage.searchFilms("другой", SearchType.TITLE).iterator().next();
+        assertTrue(other.getGenres().isEmpty());
+        assertTrue(other.getDirectors().isEmpty());
+    }
+
+    private User user(int n) {
+        return User.builder()
+                .name("User " + n)
+                .email("aggregated" + n + "@ya.ru")
+                .login("aggregated" + n)
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build();
+    }
+}
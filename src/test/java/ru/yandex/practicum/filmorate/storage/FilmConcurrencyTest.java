@@ -0,0 +1,196 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.*;
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Параллельные изменения одного фильма из разных потоков: каждый поток должен видеть свою транзакцию,
+// поэтому тест выполняется без общей тестовой транзакции
+@JdbcTest
+@AutoConfigureTestDatabase
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@ContextConfiguration(classes = {FilmDbStorage.class,
+        FilmRatingDbStorage.class,
+        FilmLocks.class,
+        UserDbStorage.class,
+        FriendDbStorage.class,
+        UserFeedDBStorage.class,
+        DirectorDbStorage.class})
+@ComponentScan(basePackages = {"ru.yandex.practicum.filmorate.storage.mapper"})
+class FilmConcurrencyTest {
+    private static final int WRITERS = 6;
+    private static final int VOTERS = 12;
+    private static final int ITERATIONS = 30;
+    // один запрос видит согласованный снимок: жанры и режиссер фильма, прочитанные вместе
+    private static final String LINKS_QUERY = """
+            SELECT
+                (SELECT ARRAY_AGG("genre_id" ORDER BY "genre_id") FROM "films_genre" WHERE "film_id" = ?) AS "genres",
+                (SELECT ARRAY_AGG("director_id") FROM "films_director" WHERE "film_id" = ?) AS "directors";
+            """;
+
+    private final FilmDbStorage filmDbStorage;
+    private final FilmRatingDbStorage filmRatingDbStorage;
+    private final FilmLocks filmLocks;
+    private final UserDbStorage userDbStorage;
+    private final DirectorDbStorage directorDbStorage;
+    private final JdbcTemplate jdbc;
+
+    @Test
+    void concurrentUpdatesAndLikesOfOneFilmDoNotInterleave() throws Exception {
+        List<Director> directors = IntStream.range(0, WRITERS)
+                .mapToObj(i -> directorDbStorage.addDirector(new Director(null, "Режиссер " + i)))
+                .toList();
+        Film film = filmDbStorage.create(film(null, writerGenres(0), List.of(directors.getFirst())));
+        List<Long> users = IntStream.range(0, VOTERS)
+                .mapToObj(i -> userDbStorage.create(User.builder()
+                        .name("User " + i)
+                        .email("stress" + i + "@ya.ru")
+                        .login("stress" + i)
+                        .birthday(LocalDate.of(2000, 1, 1))
+                        .build()).getId())
+                .toList();
+
+        // писатель i всегда сохраняет жанры i+1, i+2 и режиссера i: смешанный набор связей означает,
+        // что обновления двух писателей перемешались
+        List<Callable<Void>> tasks = new ArrayList<>();
+        CountDownLatch observing = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(WRITERS);
+        List<String> mixed = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            int writer = i;
+            tasks.add(() -> {
+                observing.await();
+                // упавший писатель тоже отпускает наблюдателя, иначе тест зависнет вместо ошибки
+                try {
+                    for (int n = 0; n < ITERATIONS; n++) {
+                        filmDbStorage.update(film(film.getId(), writerGenres(writer), List.of(directors.get(writer))));
+                    }
+                } finally {
+                    writing.countDown();
+                }
+                return null;
+            });
+        }
+        for (Long userId : users) {
+            tasks.add(() -> {
+                for (int n = 0; n < ITERATIONS; n++) {
+                    filmRatingDbStorage.addMark(film.getId(), userId, ThreadLocalRandom.current().nextInt(11));
+                    if (n % 3 == 0) {
+                        filmRatingDbStorage.removeMark(film.getId(), userId);
+                    }
+                }
+                return null;
+            });
+        }
+        // наблюдатель не должен увидеть связи, оставленные обновлением наполовину
+        tasks.add(() -> {
+            observing.countDown();
+            while (writing.getCount() > 0) {
+                String links = checkLinks(film.getId(), directors);
+                if (links != null) {
+                    mixed.add(links);
+                }
+            }
+            return null;
+        });
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        }
+
+        assertEquals(List.of(), mixed);
+        assertNull(checkLinks(film.getId(), directors));
+
+        FilmRating rating = filmRatingDbStorage.findByFilmId(film.getId());
+        assertEquals(jdbc.queryForObject("SELECT COUNT(*) FROM \"likes\" WHERE \"film_id\" = ?",
+                Long.class, film.getId()), rating.getCount());
+        assertEquals(jdbc.queryForObject("SELECT COALESCE(SUM(\"mark\"), 0) FROM \"likes\" WHERE \"film_id\" = ?",
+                Long.class, film.getId()), rating.getSum());
+    }
+
+    @Test
+    void locksOfDifferentFilmsDoNotBlockEachOther() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            boolean otherFilmDone = filmLocks.call(1L, () -> {
+                Future<?> other = executor.submit(() -> filmLocks.run(2L, () -> {
+                }));
+                Future<?> same = executor.submit(() -> filmLocks.run(1L, () -> {
+                }));
+                try {
+                    other.get(5, TimeUnit.SECONDS);
+                    TimeUnit.MILLISECONDS.sleep(100);
+                    return other.isDone() && !same.isDone();
+                } catch (Exception e) {
+                    return false;
+                }
+            });
+            assertTrue(otherFilmDone);
+        }
+    }
+
+    // null, если жанры и режиссер фильма сохранены одним писателем, иначе описание увиденного набора
+    private String checkLinks(Long filmId, List<Director> directors) {
+        return jdbc.queryForObject(LINKS_QUERY, (rs, rowNum) -> {
+            List<Integer> genresId = toList(rs.getArray("genres"));
+            List<Long> directorsId = toList(rs.getArray("directors"));
+            int writer = directorsId.size() == 1
+                    ? directors.stream().map(Director::getId).toList().indexOf(directorsId.getFirst())
+                    : -1;
+            if (writer >= 0 && genresId.equals(writerGenres(writer).stream().map(Genre::getId).sorted().toList())) {
+                return null;
+            }
+            return "жанры " + genresId + ", режиссеры " + directorsId;
+        }, filmId, filmId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> toList(Array array) throws SQLException {
+        return array == null ? List.of() : Arrays.stream((Object[]) array.getArray()).map(value -> (T) value).toList();
+    }
+
+    private List<Genre> writerGenres(int writer) {
+        return List.of(new Genre(writer % 6 + 1, null), new Genre((writer + 1) % 6 + 1, null));
+    }
+
+    private Film film(Long id, List<Genre> genres, List<Director> directors) {
+        return Film.builder()
+                .id(id)
+                .name("Фильм")
+                .description("Описание")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(Duration.ofMinutes(90))
+                .mpa(new Mpa(1, "G"))
+                .genres(genres)
+                .directors(directors)
+                .build();
+    }
+}
@@ -13,9 +13,18 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.test.context.ContextConfiguration;
+import ru.yandex.practicum.filmorate.cache.FilmCache;
+import ru.yandex.practicum.filmorate.cache.FilmQueryCache;
+import ru.yandex.practicum.filmorate.cache.UserLikesCache;
+import ru.yandex.practicum.filmorate.config.ExecutorConfig;
+import ru.yandex.practicum.filmorate.exception.ConflictException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.service.CoalescingProperties;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.LikeWriteBuffer;
+import ru.yandex.practicum.filmorate.service.RequestCoalescer;
+import ru.yandex.practicum.filmorate.service.TrendingFilms;
 
 import java.time.Duration;
 import java.time.LocalDate;
@@ -29,11 +38,17 @@ import static org.junit.jupiter.api.Assertions.*;
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @ContextConfiguration(classes = {FilmDbStorage.class,
+        ExecutorConfig.class,
+        FilmCache.class,
+        FilmQueryCache.class,
+        UserLikesCache.class,
         GenreDbStorage.class,
         DirectorDbStorage.class,
         UserDbStorage.class,
         MpaDbStorage.class,
         FilmLikeDbStorage.class,
+        FilmRatingDbStorage.class,
+        FilmLocks.class,
         FriendDbStorage.class,
         FilmGenreDBStorage.class,
         FilmDirectorDBStorage.class,
@@ -41,12 +56,19 @@ import static org.junit.jupiter.api.Assertions.*;
         ReviewDbStorage.class,
         UsabilityStateDbStorage.class,
         DirectorDbStorage.class,
-        FilmService.class})
+        FilmService.class,
+        LikeWriteBuffer.class,
+        TrendingFilms.class,
+        RequestCoalescer.class,
+        CoalescingProperties.class,
+        EntityVersions.class})
 @ComponentScan(basePackages = {"ru.yandex.practicum.filmorate.storage.mapper"})
 class FilmDbStorageTest {
     private final FilmDbStorage filmDbStorage;
     private final UserDbStorage userDbStorage;
     private final FilmService filmService;
+    private final FilmRatingDbStorage filmRatingDbStorage;
+    private final DirectorDbStorage directorDbStorage;
     private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
 
     @AllArgsConstructor
@@ -159,6 +181,19 @@ class FilmDbStorageTest {
         assertEquals(film.getDuration(), responseEntity.iterator().next().getDuration());
     }
 
+    @Test
+    void createAll() {
+        List<Film> films = filmDbStorage.createAll(List.of(getTestFilm(1), getTestFilm(2)));
+
+        assertNotNull(films.get(0).getId());
+        assertEquals(films.get(0).getId() + 1, films.get(1).getId());
+        for (Film film : films) {
+            Film saved = filmService.findById(film.getId());
+            assertEquals(film.getName(), saved.getName());
+            assertEquals(film.getGenres().size(), saved.getGenres().size());
+        }
+    }
+
     @Test
     void update() {
         Film film = getTestFilm(1);
@@ -177,6 +212,26 @@ class FilmDbStorageTest {
         assertEquals(newFilm.getDuration(), responseEntity.iterator().next().getDuration());
     }
 
+    @Test
+    void updateWithStaleVersion() {
+        Long filmId = filmDbStorage.create(getTestFilm(1)).getId();
+        Film first = getTestFilm(2);
+        first.setId(filmId);
+        first.setVersion(0L);
+        Film second = getTestFilm(1);
+        second.setId(filmId);
+        second.setVersion(0L);
+
+        assertEquals(1L, filmDbStorage.update(first).getVersion());
+        assertThrows(ConflictException.class, () -> filmDbStorage.update(second));
+        assertEquals(first.getName(), filmDbStorage.findById(filmId).getName());
+
+        // без версии обновление применяется к текущей строке
+        second.setVersion(null);
+        assertEquals(2L, filmDbStorage.update(second).getVersion());
+        assertEquals(2L, filmDbStorage.findById(filmId).getVersion());
+    }
+
     @Test
     void createNullNameFilm() {
         Film film = getTestFilm(1);
@@ -273,13 +328,122 @@ class FilmDbStorageTest {
         User user = getTestUser(1);
         Long user1Id = userDbStorage.create(user).getId();
 
-        filmService.addLike(filmId, user1Id, getRandomMark());
+        int mark = getRandomMark();
+        filmService.addLike(filmId, user1Id, mark);
 
         ArrayList<Film> responseEntity = new ArrayList<>(filmService.findAll());
         assertNotNull(responseEntity);
         assertEquals(1, responseEntity.size());
         assertEquals(1, responseEntity.get(0).getLikesCount());
-        assertTrue(responseEntity.get(0).getLikes().contains(new FilmLike(filmId, user1Id, 0)));
+        assertEquals(1, responseEntity.get(0).getRating().getHistogram()[mark]);
+        assertEquals((double) mark, responseEntity.get(0).getRating().getAverage());
+        assertTrue(filmService.findLikes(filmId, 0, 10).contains(new FilmLike(filmId, user1Id, 0)));
+    }
+
+    @Test
+    void addMarks() {
+        Long filmId = filmDbStorage.create(getTestFilm(1)).getId();
+        Long user1Id = userDbStorage.create(getTestUser(1)).getId();
+        Long user2Id = userDbStorage.create(getTestUser(2)).getId();
+
+        List<FilmLike> saved = filmRatingDbStorage.addMarks(List.of(
+                new FilmLike(filmId, user1Id, 4),
+                new FilmLike(filmId, user2Id, 8),
+                new FilmLike(filmId, user2Id + 100, 10),
+                new FilmLike(filmId + 100, user1Id, 10)));
+
+        assertEquals(2, saved.size());
+        FilmRating rating = filmDbStorage.findById(filmId).getRating();
+        assertEquals(2, rating.getCount());
+        assertEquals(6.0, rating.getAverage());
+        assertEquals(1, rating.getHistogram()[4]);
+        assertEquals(1, rating.getHistogram()[8]);
+    }
+
+    @Test
+    void getPopularRankedByBayesAndWilson() {
+        Long film1Id = filmDbStorage.create(getTestFilm(1)).getId();
+        Long film2Id = filmDbStorage.create(getTestFilm(2)).getId();
+        Long film3Id = filmDbStorage.create(getTestFilm(3)).getId();
+        List<Long> usersId = List.of(userDbStorage.create(getTestUser(1)).getId(),
+                userDbStorage.create(getTestUser(2)).getId(),
+                userDbStorage.create(getTestUser(3)).getId());
+        // одна десятка против трех девяток, у третьего фильма оценок нет
+        filmDbStorage.addLike(film1Id, usersId.getFirst(), 10);
+        usersId.forEach(userId -> filmDbStorage.addLike(film2Id, userId, 9));
+
+        assertEquals(List.of(film1Id, film2Id, film3Id), popularIds(RankType.AVG));
+        assertEquals(List.of(film2Id, film1Id, film3Id), popularIds(RankType.BAYES));
+        assertEquals(List.of(film2Id, film1Id, film3Id), popularIds(RankType.WILSON));
+    }
+
+    // у фильма, все оценки которого удалены, сводка остается, но ранжируется он как фильм без оценок
+    @Test
+    void filmWithRemovedMarksIsRankedLast() {
+        Director director = directorDbStorage.addDirector(new Director(null, "Режиссер"));
+        Film removed = getTestFilm(1);
+        removed.setDirectors(List.of(director));
+        Long removedId = filmDbStorage.create(removed).getId();
+        Film low = getTestFilm(2);
+        low.setDirectors(List.of(director));
+        Long lowId = filmDbStorage.create(low).getId();
+        Long userId = userDbStorage.create(getTestUser(1)).getId();
+        filmDbStorage.addLike(removedId, userId, 9);
+        filmDbStorage.deleteLike(removedId, userId);
+        filmDbStorage.addLike(lowId, userId, 0);
+
+        for (RankType rank : RankType.values()) {
+            assertEquals(List.of(lowId, removedId), popularIds(rank), rank.name());
+            List<Long> byLikes = new ArrayList<>();
+            String cursor = null;
+            do {
+                FilmPage page = filmDbStorage.getFilmsByDirector(director.getId(), "likes", rank, cursor, 1);
+                page.getFilms().forEach(film -> byLikes.add(film.getId()));
+                cursor = page.getNext();
+            } while (cursor != null);
+            assertEquals(List.of(lowId, removedId), byLikes, rank.name());
+        }
+    }
+
+    private List<Long> popularIds(RankType rank) {
+        return filmDbStorage.getPopular(10L, 0L, 0, rank).stream()
+                .map(Film::getId)
+                .toList();
+    }
+
+    @Test
+    void getFilmsByDirectorPagesWithCursor() {
+        Director director = directorDbStorage.addDirector(new Director(null, "Режиссер"));
+        List<Long> filmsId = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Film film = getTestFilm(i);
+            film.setDirectors(List.of(director));
+            filmsId.add(filmDbStorage.create(film).getId());
+        }
+        Long userId = userDbStorage.create(getTestUser(1)).getId();
+        filmDbStorage.addLike(filmsId.get(0), userId, 8);
+        filmDbStorage.addLike(filmsId.get(2), userId, 8);
+
+        // по дате выхода: фильм 2 вышел год назад, фильм 3 - три месяца назад, фильм 1 - сегодня
+        FilmPage first = filmDbStorage.getFilmsByDirector(director.getId(), "year", RankType.AVG, null, 2);
+        assertEquals(List.of(filmsId.get(1), filmsId.get(2)), first.getFilms().stream().map(Film::getId).toList());
+        FilmPage second = filmDbStorage.getFilmsByDirector(director.getId(), "year", RankType.AVG,
+                first.getNext(), 2);
+        assertEquals(List.of(filmsId.get(0)), second.getFilms().stream().map(Film::getId).toList());
+        assertNull(second.getNext());
+
+        // по оценке: равные оценки - по id, фильм без оценок последний
+        List<Long> byLikes = new ArrayList<>();
+        String cursor = null;
+        do {
+            FilmPage page = filmDbStorage.getFilmsByDirector(director.getId(), "likes", RankType.AVG, cursor, 1);
+            page.getFilms().forEach(film -> byLikes.add(film.getId()));
+            cursor = page.getNext();
+        } while (cursor != null);
+        assertEquals(List.of(filmsId.get(0), filmsId.get(2), filmsId.get(1)), byLikes);
+
+        assertThrows(ValidationException.class, () -> filmDbStorage.getFilmsByDirector(director.getId(),
+                "year", RankType.AVG, "не курсор", 2));
     }
 
     @Test
@@ -323,7 +487,7 @@ class FilmDbStorageTest {
         filmDbStorage.addLike(film3Id, user2Id, 4);
 
 
-        ArrayList<Film> responseEntity = new ArrayList<>(filmDbStorage.getPopular(10L, 0L, 0));
+        ArrayList<Film> responseEntity = new ArrayList<>(filmDbStorage.getPopular(10L, 0L, 0, RankType.AVG));
         assertNotNull(responseEntity);
         assertEquals(3, responseEntity.size());
         assertEquals(film2Id, responseEntity.get(0).getId());
@@ -355,7 +519,7 @@ class FilmDbStorageTest {
         filmDbStorage.addLike(film3Id, user2Id, 2);
 
 
-        ArrayList<Film> responseEntity = new ArrayList<>(filmDbStorage.getPopular(1L, 0L, 0));
+        ArrayList<Film> responseEntity = new ArrayList<>(filmDbStorage.getPopular(1L, 0L, 0, RankType.AVG));
         assertNotNull(responseEntity);
         assertEquals(1, responseEntity.size());
         assertEquals(film2Id, responseEntity.get(0).getId());
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.storage.mapper.FilmRatingRowMapper;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// База, созданная прежним schema.sql до перехода на миграции, доводится миграциями до актуальной схемы.
+// Настройки базовой версии те же, что в application.properties
+class PreMigrationSchemaTest {
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void createPreMigrationDatabase() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pre-migration-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("db/pre-migration/schema.sql"),
+                new ClassPathResource("db/pre-migration/data.sql")).execute(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("insert into \"users\" (\"email\", \"login\", \"birthday\") values "
+                + "('u1@ya.ru', 'u1', '2000-01-01'), ('u2@ya.ru', 'u2', '2000-01-01')");
+        jdbc.update("insert into \"films\" (\"name\", \"release_date\", \"duration\", \"mpa_id\") values "
+                + "('С оценками', '2000-01-01', 90, 1), ('Без оценок', '2001-01-01', 90, 1)");
+        jdbc.update("insert into \"likes\" (\"film_id\", \"user_id\", \"mark\") values (1, 1, 8), (1, 2, 10)");
+    }
+
+    @Test
+    void ratingsAreCreatedAndFilledFromLikes() {
+        migrate();
+
+        Map<String, Object> rated = rating(1L);
+        assertEquals(2, rated.get("likes_count"));
+        assertEquals(18L, rated.get("marks_sum"));
+        assertEquals(9.0, rated.get("average"));
+        assertEquals((18.0 + 50) / 12, (Double) rated.get("bayes_score"), 1e-9);
+        assertNotNull(rated.get("wilson_score"));
+        FilmRating histogram = jdbc.queryForObject("select * from \"film_ratings\" where \"film_id\" = 1",
+                new FilmRatingRowMapper());
+        assertArrayEquals(new int[]{0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 1}, histogram.getHistogram());
+
+        assertEquals(0, rating(2L).get("likes_count"));
+        assertEquals(2000, jdbc.queryForObject(
+                "select \"release_year\" from \"films\" where \"film_id\" = 1", Integer.class));
+    }
+
+    @Test
+    void storagesWorkOnMigratedDatabase() {
+        migrate();
+        FilmRatingDbStorage ratings = new FilmRatingDbStorage(jdbc, new FilmRatingRowMapper(),
+                new DataSourceTransactionManager(dataSource), new FilmLocks(16, Duration.ofSeconds(5),
+                        new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class)));
+
+        ratings.addMark(2L, 1L, 6);
+
+        assertEquals(6.0, ratings.findByFilmId(2L).getAverage());
+        assertEquals(9.0, ratings.findByFilmId(1L).getAverage());
+    }
+
+    // время оценок, поставленных до миграций, неизвестно; новые оценки получают время записи
+    @Test
+    void likesBeforeMigrationHaveNoTime() {
+        migrate();
+        FilmRatingDbStorage ratings = new FilmRatingDbStorage(jdbc, new FilmRatingRowMapper(),
+                new DataSourceTransactionManager(dataSource), new FilmLocks(16, Duration.ofSeconds(5),
+                        new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class)));
+
+        ratings.addMark(2L, 1L, 6);
+
+        assertEquals(2, jdbc.queryForObject(
+                "select count(*) from \"likes\" where \"film_id\" = 1 and \"created_at\" is null", Integer.class));
+        assertNotNull(jdbc.queryForObject(
+                "select \"created_at\" from \"likes\" where \"film_id\" = 2", Object.class));
+    }
+
+    private void migrate() {
+        Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+    }
+
+    private Map<String, Object> rating(Long filmId) {
+        return jdbc.queryForMap("select * from \"film_ratings\" where \"film_id\" = ?", filmId);
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.RankType;
+
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Проверяет, что условие горячего запроса на параметр выполняется поиском по индексу, а не полным сканированием
+@JdbcTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class QueryPlanTest {
+    private final JdbcTemplate jdbc;
+
+    static Stream<Arguments> hotQueries() {
+        return Stream.of(
+                Arguments.of("популярные по году", FilmDbStorage.FILMS_GET_POPULAR_QUERY_BY_YEAR
+                                .formatted(FilmDbStorage.orderBy(RankType.AVG)),
+                        "release_year", new Object[]{2000, 10}),
+                Arguments.of("популярные по жанру", FilmDbStorage.FILMS_GET_POPULAR_QUERY_BY_GENRE
+                                .formatted(FilmDbStorage.orderBy(RankType.BAYES)),
+                        "genre_id", new Object[]{1, 10}),
+                Arguments.of("фильмы режиссера", FilmDbStorage.filmsByDirectorQuery("likes", RankType.WILSON, true),
+                        "director_id", new Object[]{1, -0.5, 1, 10}),
+                Arguments.of("фильмы с лайком пользователя", FilmLikeDbStorage.LIKES_FIND_FILMS_ID_BY_USER_ID_QUERY,
+                        "user_id", new Object[]{1}),
+                Arguments.of("оценки пользователя", FilmLikeDbStorage.LIKES_FIND_BY_USER_ID_AFTER_QUERY,
+                        "user_id", new Object[]{1, 0, 10}),
+                Arguments.of("общие друзья", UserDbStorage.USERS_FIND_COMMON_FRIENDS_QUERY,
+                        "friend_id", new Object[]{1, 1, 2, 2}),
+                Arguments.of("лента пользователя", UserFeedDBStorage.USER_FEEDS_FIND_BY_USER_ID,
+                        "user_id", new Object[]{1}),
+                Arguments.of("отзывы фильма", ReviewDbStorage.REQUEST_GET_ALL_REVIEWS_FOR_FILM,
+                        "film_id", new Object[]{1, 10})
+        );
+    }
+
+    @DisplayName("Горячий запрос использует вторичный индекс")
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("hotQueries")
+    void hotQueryUsesIndex(String name, String query, String column, Object[] params) {
+        String plan = jdbc.queryForObject("EXPLAIN " + query.strip().replaceAll(";$", ""), String.class, params);
+        // H2 помечает доступ по индексу как /* PUBLIC.имя_индекса: колонка = ?N */
+        Pattern indexLookup = Pattern.compile("/\\* PUBLIC\\.\\w+: " + column + " = \\?\\d");
+        assertTrue(indexLookup.matcher(plan).find(), "Запрос \"" + name + "\" не использует индекс по колонке "
+                + column + ":\n" + plan);
+    }
+}
@@ -14,6 +14,8 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.test.context.ContextConfiguration;
+import ru.yandex.practicum.filmorate.exception.ConflictException;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Friend;
 import ru.yandex.practicum.filmorate.model.User;
@@ -34,6 +36,8 @@ import static org.junit.jupiter.api.Assertions.*;
         UserDbStorage.class,
         MpaDbStorage.class,
         FilmLikeDbStorage.class,
+        FilmRatingDbStorage.class,
+        FilmLocks.class,
         FriendDbStorage.class,
         FilmGenreDBStorage.class,
         FilmDirectorDBStorage.class,
@@ -130,6 +134,21 @@ class UserDbStorageTest {
         assertEquals(newUser.getBirthday(), responseEntity.iterator().next().getBirthday());
     }
 
+    @Test
+    void updateWithStaleVersion() {
+        Long userId = userDbStorage.create(getTestUser(1)).getId();
+        User newUser = getTestUser(2);
+        newUser.setId(userId);
+        newUser.setVersion(0L);
+        assertEquals(1L, userDbStorage.update(newUser).getVersion());
+
+        User staleUser = getTestUser(3);
+        staleUser.setId(userId);
+        staleUser.setVersion(0L);
+        assertThrows(ConflictException.class, () -> userDbStorage.update(staleUser));
+        assertEquals(1L, userDbStorage.findById(userId).getVersion());
+    }
+
     @ParameterizedTest
     @ValueSource(strings = {
             "mail",
@@ -324,6 +343,12 @@ class UserDbStorageTest {
         assertTrue(responseEntity.get(0).getFriends().contains(new Friend(user2Id, 2)));
     }
 
+    @Test
+    void addFriendToUnknownUser() {
+        Long userId = userDbStorage.create(getTestUser(1)).getId();
+        assertThrows(NotFoundException.class, () -> userDbStorage.addToFriends(userId + 100, userId));
+    }
+
     @Test
     void deleteFriend() {
         User user = getTestUser(1);
@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.actuate.health.Status;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.MpaService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WarmupRunnerTest {
+    private final FilmService filmService = mock(FilmService.class);
+    private final GenreService genreService = mock(GenreService.class);
+    private final WarmupHealthIndicator health = new WarmupHealthIndicator();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final WarmupRunner runner = new WarmupRunner(filmService, mock(UserService.class), genreService,
+            mock(MpaService.class), new ObjectMapper(), executor,
+            new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class), health, true, 20, 2);
+
+    @AfterEach
+    void closeExecutor() {
+        executor.close();
+    }
+
+    @Test
+    void completedWarmupKeepsReadiness() {
+        runner.run(new DefaultApplicationArguments());
+
+        assertEquals(Status.UP, health.health().getStatus());
+    }
+
+    @Test
+    void failedWarmupTakesApplicationOutOfService() {
+        when(genreService.findAll()).thenThrow(new IllegalStateException("база недоступна"));
+
+        runner.run(new DefaultApplicationArguments());
+
+        assertEquals(Status.OUT_OF_SERVICE, health.health().getStatus());
+    }
+}